@@ -1,13 +1,35 @@
 /**
  * BMICalculator.java - Class for BMI calculations
  * Demonstrates Inheritance from Person class
+ *
+ * The arithmetic lives in static, primitive-only methods (doubles in, int
+ * category codes out) so high-volume scoring can run without creating any
+ * objects. The instance API delegates to them.
  */
 
 public class BMICalculator extends Person {
+    // Category codes, in increasing BMI order
+    public static final int UNDERWEIGHT = 0;
+    public static final int NORMAL_WEIGHT = 1;
+    public static final int OVERWEIGHT = 2;
+    public static final int OBESE = 3;
+    public static final int UNKNOWN = -1;
+    
+    private static final String[] CATEGORY_NAMES = {
+        "Underweight", "Normal weight", "Overweight", "Obese"
+    };
+    private static final String[] RECOMMENDATIONS = {
+        "Consider increasing caloric intake and consult a nutritionist.",
+        "Maintain your current healthy lifestyle!",
+        "Consider regular exercise and a balanced diet.",
+        "Consult a healthcare professional for personalized advice."
+    };
+    
     // Private attributes
     private double weight; // in kg
     private double height; // in cm
     private double bmi;
+    private int categoryCode = UNKNOWN;
     private String category;
     
     /**
@@ -30,44 +52,120 @@ public class BMICalculator extends Person {
      */
     private void calculateBMI() {
         if (height > 0) {
-            double heightInMeters = height / 100.0;
-            this.bmi = weight / (heightInMeters * heightInMeters);
-            this.category = getBMICategory();
+            this.bmi = computeBMI(weight, height);
+            this.categoryCode = categoryCode(bmi);
+            this.category = categoryName(categoryCode);
         }
     }
     
     /**
-     * Determine BMI category based on calculated BMI
-     * @return BMI category string
+     * Get health recommendation based on BMI category
+     * @return Health recommendation string
+     */
+    public String getHealthRecommendation() {
+        return recommendation(categoryCode);
+    }
+    
+    /**
+     * Compute BMI from weight and height
+     * @param weight Weight in kg
+     * @param height Height in cm (must be positive)
+     * @return Unrounded BMI
      */
-    private String getBMICategory() {
+    public static double computeBMI(double weight, double height) {
+        double heightInMeters = height / 100.0;
+        return weight / (heightInMeters * heightInMeters);
+    }
+    
+    /**
+     * Round a BMI to the two decimals it is displayed and stored with
+     */
+    public static double roundBMI(double bmi) {
+        return Math.round(bmi * 100.0) / 100.0;
+    }
+    
+    /**
+     * Determine the category code of a BMI
+     * @return UNDERWEIGHT, NORMAL_WEIGHT, OVERWEIGHT or OBESE
+     */
+    public static int categoryCode(double bmi) {
         if (bmi < 18.5) {
-            return "Underweight";
-        } else if (bmi >= 18.5 && bmi < 25) {
-            return "Normal weight";
-        } else if (bmi >= 25 && bmi < 30) {
-            return "Overweight";
+            return UNDERWEIGHT;
+        } else if (bmi < 25) {
+            return NORMAL_WEIGHT;
+        } else if (bmi < 30) {
+            return OVERWEIGHT;
         } else {
-            return "Obese";
+            return OBESE;
         }
     }
     
     /**
-     * Get health recommendation based on BMI category
-     * @return Health recommendation string
+     * Look up the code of a category name
+     * @return Category code, or UNKNOWN for anything else
      */
-    public String getHealthRecommendation() {
-        switch (category) {
-            case "Underweight":
-                return "Consider increasing caloric intake and consult a nutritionist.";
-            case "Normal weight":
-                return "Maintain your current healthy lifestyle!";
-            case "Overweight":
-                return "Consider regular exercise and a balanced diet.";
-            case "Obese":
-                return "Consult a healthcare professional for personalized advice.";
-            default:
-                return "Please check your input values.";
+    public static int categoryCode(String category) {
+        for (int code = 0; code < CATEGORY_NAMES.length; code++) {
+            if (CATEGORY_NAMES[code].equals(category)) {
+                return code;
+            }
+        }
+        return UNKNOWN;
+    }
+    
+    /**
+     * Get the display name of a category code (shared constant, never a new string)
+     */
+    public static String categoryName(int code) {
+        return code >= 0 && code < CATEGORY_NAMES.length ? CATEGORY_NAMES[code] : "Unknown";
+    }
+    
+    /**
+     * Get the health recommendation for a category code, e.g. from categoryCode(bmi)
+     */
+    public static String recommendation(int code) {
+        return code >= 0 && code < RECOMMENDATIONS.length
+                ? RECOMMENDATIONS[code] : "Please check your input values.";
+    }
+    
+    /**
+     * Get the health recommendation for a category name
+     * Only for callers that have nothing but the name; prefer recommendation(int).
+     */
+    public static String recommendation(String category) {
+        return recommendation(categoryCode(category));
+    }
+    
+    /**
+     * Score a range of measurements without allocating
+     * Results are written to the output arrays at the same positions; BMIs are
+     * rounded like getBMI(). Rows with a non-positive height get BMI 0 and UNKNOWN.
+     * The passes are kept branch-free so the JIT can compile them to SIMD code.
+     * @param weights Weights in kg
+     * @param heights Heights in cm
+     * @param bmis Output BMIs
+     * @param categories Output category codes (may be null if not needed)
+     */
+    public static void score(double[] weights, double[] heights, double[] bmis, int[] categories,
+                             int offset, int length) {
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            double heightInMeters = heights[i] / 100.0;
+            bmis[i] = weights[i] / (heightInMeters * heightInMeters);
+        }
+        
+        if (categories != null) {
+            // Same thresholds as categoryCode(double), counted instead of branched on
+            for (int i = offset; i < end; i++) {
+                double bmi = bmis[i];
+                int code = OBESE - (bmi < 30 ? 1 : 0) - (bmi < 25 ? 1 : 0) - (bmi < 18.5 ? 1 : 0);
+                categories[i] = heights[i] > 0 ? code : UNKNOWN;
+            }
+        }
+        
+        // floor(x + 0.5) is what Math.round does for finite values, without the long conversion
+        for (int i = offset; i < end; i++) {
+            bmis[i] = heights[i] > 0 ? Math.floor(bmis[i] * 100.0 + 0.5) / 100.0 : 0;
         }
     }
     
@@ -81,13 +179,20 @@ public class BMICalculator extends Person {
     }
     
     public double getBMI() {
-        return Math.round(bmi * 100.0) / 100.0;
+        return roundBMI(bmi);
     }
     
     public String getCategory() {
         return category;
     }
     
+    /**
+     * Get the category code, or UNKNOWN if no BMI could be calculated
+     */
+    public int getCategoryCode() {
+        return categoryCode;
+    }
+    
     // Setter methods with recalculation
     public void setWeight(double weight) {
         if (weight > 0) {
@@ -0,0 +1,476 @@
+/**
+ * BMIHttpServer.java - Headless HTTP front end for the BMI tracker
+ * Serves BMI calculation and the file-backed history as JSON over a local port
+ * using the JDK's built-in HTTP server, so the tracker can run without Swing.
+ * There is no authentication, so it listens on the loopback interface only
+ * unless another address is given explicitly (e.g. --bind 0.0.0.0).
+ *
+ * Endpoints:
+ *   GET  /api/calculate?weight=70&height=175
+ *   POST /api/records               name, age, gender, weight, height (form or query)
+ *   GET  /api/users
+ *   GET  /api/users/{name}/history?page=1&size=50
+ *   GET  /api/users/{name}/statistics
+ *   GET  /api/latest                latest record of every user
+ *
+ * Usage: java BMIHttpServer [--port n] [--bind address] [--threads n] [--binary]
+ */
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class BMIHttpServer {
+    public static final int DEFAULT_PORT = 8080;
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 1000;
+
+    // Pending connections the OS may queue before refusing new ones
+    private static final int BACKLOG = 1024;
+
+    private final FileManager fileManager;
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    /**
+     * Constructor - Binds the port on the loopback interface; call start() to begin serving
+     * @param fileManager Storage for users and records
+     * @param port Port to listen on
+     * @param threads Number of request handling threads
+     */
+    public BMIHttpServer(FileManager fileManager, int port, int threads) throws IOException {
+        this(fileManager, InetAddress.getLoopbackAddress(), port, threads);
+    }
+
+    /**
+     * Constructor - Binds the port; call start() to begin serving
+     * @param fileManager Storage for users and records
+     * @param bindAddress Interface to listen on; the wildcard address exposes the
+     *                    unauthenticated API to the whole network
+     * @param port Port to listen on
+     * @param threads Number of request handling threads
+     */
+    public BMIHttpServer(FileManager fileManager, InetAddress bindAddress, int port, int threads)
+            throws IOException {
+        this.fileManager = fileManager;
+        this.server = HttpServer.create(new InetSocketAddress(bindAddress, port), BACKLOG);
+
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "http-worker-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.createContext("/api/", this::handle);
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stop accepting requests, giving running ones up to the delay to finish
+     */
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        executor.shutdown();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public InetAddress getBindAddress() {
+        return server.getAddress().getAddress();
+    }
+
+    /**
+     * Route a request to its endpoint
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String method = exchange.getRequestMethod();
+            String[] path = exchange.getRequestURI().getRawPath().substring("/api/".length()).split("/");
+            Map<String, String> params = parseParams(exchange.getRequestURI().getRawQuery());
+
+            if (path.length == 1 && path[0].equals("calculate")) {
+                requireMethod(method, "GET");
+                calculate(exchange, params);
+            } else if (path.length == 1 && path[0].equals("records")) {
+                requireMethod(method, "POST");
+                params.putAll(parseParams(readBody(exchange)));
+                saveRecord(exchange, params);
+            } else if (path.length == 1 && path[0].equals("users")) {
+                requireMethod(method, "GET");
+                listUsers(exchange);
+            } else if (path.length == 3 && path[0].equals("users") && path[2].equals("history")) {
+                requireMethod(method, "GET");
+                history(exchange, decode(path[1]), params);
+            } else if (path.length == 3 && path[0].equals("users") && path[2].equals("statistics")) {
+                requireMethod(method, "GET");
+                statistics(exchange, decode(path[1]));
+            } else if (path.length == 1 && path[0].equals("latest")) {
+                requireMethod(method, "GET");
+                latest(exchange);
+            } else {
+                sendError(exchange, 404, "No such endpoint");
+            }
+        } catch (RequestException e) {
+            sendError(exchange, e.status, e.getMessage());
+        } catch (RuntimeException | IOException e) {
+            e.printStackTrace();
+            sendError(exchange, 500, "Internal error");
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void calculate(HttpExchange exchange, Map<String, String> params) throws IOException {
+        double weight = requireWeight(params);
+        double height = requireHeight(params);
+        double bmi = BMICalculator.computeBMI(weight, height);
+        int category = BMICalculator.categoryCode(bmi);
+
+        StringBuilder json = new StringBuilder();
+        json.append("{\"weight\":").append(weight)
+            .append(",\"height\":").append(height)
+            .append(",\"bmi\":").append(BMICalculator.roundBMI(bmi))
+            .append(",\"category\":").append(quote(BMICalculator.categoryName(category)))
+            .append(",\"recommendation\":").append(quote(BMICalculator.recommendation(category)))
+            .append('}');
+        sendJson(exchange, 200, json);
+    }
+
+    private void saveRecord(HttpExchange exchange, Map<String, String> params) throws IOException {
+        String name = requireName(params.get("name"));
+        int age = (int) requireNumber(params, "age", 1, 150);
+        String gender = params.containsKey("gender") ? params.get("gender") : "";
+        double weight = requireWeight(params);
+        double height = requireHeight(params);
+        double bmi = BMICalculator.computeBMI(weight, height);
+        double roundedBMI = BMICalculator.roundBMI(bmi);
+        String category = BMICalculator.categoryName(BMICalculator.categoryCode(bmi));
+
+        // Registering a user forces a journal sync, so skip it when nothing changed
+        FileManager.UserDetails existing = fileManager.getUserDetails(name);
+        boolean userSaved = existing != null && existing.getAge() == age && existing.getGender().equals(gender)
+                || fileManager.saveUser(name, age, gender);
+        if (!userSaved || !fileManager.saveBMIRecord(name, weight, height,
+                                                    roundedBMI, category)) {
+            throw new RequestException(500, "Could not save record");
+        }
+
+        StringBuilder json = new StringBuilder();
+        json.append("{\"name\":").append(quote(name))
+            .append(",\"bmi\":").append(roundedBMI)
+            .append(",\"category\":").append(quote(category))
+            .append('}');
+        sendJson(exchange, 201, json);
+    }
+
+    private void listUsers(HttpExchange exchange) throws IOException {
+        StringBuilder json = new StringBuilder("{\"users\":[");
+        boolean first = true;
+        for (String name : fileManager.getAllUsers()) {
+            FileManager.UserDetails user = fileManager.getUserDetails(name);
+            if (user == null) {
+                continue; // deleted while listing
+            }
+            json.append(first ? "" : ",")
+                .append("{\"name\":").append(quote(user.getName()))
+                .append(",\"age\":").append(user.getAge())
+                .append(",\"gender\":").append(quote(user.getGender()))
+                .append(",\"createdAt\":").append(quote(user.getCreatedAt()))
+                .append('}');
+            first = false;
+        }
+        json.append("]}");
+        sendJson(exchange, 200, json);
+    }
+
+    /**
+     * One page of a user's records, read straight from the store's cursor
+     * Binary and in-memory histories seek to the page; text files start at the
+     * time index block holding it.
+     */
+    private void history(HttpExchange exchange, String name, Map<String, String> params) throws IOException {
+        requireUser(name);
+        int page = (int) requireNumber(params, "page", 1, Integer.MAX_VALUE, 1);
+        int size = (int) requireNumber(params, "size", 1, MAX_PAGE_SIZE, DEFAULT_PAGE_SIZE);
+        long first = (long) (page - 1) * size;
+
+        StringBuilder json = new StringBuilder();
+        json.append("{\"name\":").append(quote(name))
+            .append(",\"page\":").append(page)
+            .append(",\"size\":").append(size);
+
+        try (RecordCursor reader = fileManager.openRecordReader(name, first)) {
+            long total = reader.getRecordCount();
+            if (total >= 0) {
+                json.append(",\"total\":").append(total);
+            }
+
+            boolean positioned = reader.next();
+            json.append(",\"records\":[");
+            int count = 0;
+            while (positioned && count < size) {
+                json.append(count > 0 ? "," : "")
+                    .append("{\"timestamp\":").append(quote(reader.getTimestamp()))
+                    .append(",\"weight\":").append(reader.getWeight())
+                    .append(",\"height\":").append(reader.getHeight())
+                    .append(",\"bmi\":").append(reader.getBmi())
+                    .append(",\"category\":").append(quote(reader.getCategory()))
+                    .append('}');
+                count++;
+                positioned = reader.next();
+            }
+            json.append("],\"hasMore\":").append(positioned).append('}');
+        }
+        sendJson(exchange, 200, json);
+    }
+
+    private void statistics(HttpExchange exchange, String name) throws IOException {
+        requireUser(name);
+        FileManager.BMIStatistics stats = fileManager.getUserStatistics(name);
+        if (stats == null) {
+            throw new RequestException(404, "No records for user: " + name);
+        }
+
+        StringBuilder json = new StringBuilder();
+        json.append("{\"name\":").append(quote(name))
+            .append(",\"totalRecords\":").append(stats.getTotalRecords())
+            .append(",\"avgBMI\":").append(number(stats.getAvgBMI()))
+            .append(",\"minBMI\":").append(number(stats.getMinBMI()))
+            .append(",\"maxBMI\":").append(number(stats.getMaxBMI()))
+            .append(",\"medianBMI\":").append(number(stats.getMedianBMI()))
+            .append(",\"stdDevBMI\":").append(number(stats.getStdDevBMI()))
+            .append(",\"minWeight\":").append(number(stats.getMinWeight()))
+            .append(",\"maxWeight\":").append(number(stats.getMaxWeight()))
+            .append(",\"firstBMI\":").append(number(stats.getFirstBMI()))
+            .append(",\"lastBMI\":").append(number(stats.getLastBMI()))
+            .append('}');
+        sendJson(exchange, 200, json);
+    }
+
+    /**
+     * Every user's latest record, served from the in-memory snapshot table
+     */
+    private void latest(HttpExchange exchange) throws IOException {
+        StringBuilder json = new StringBuilder("{\"users\":[");
+        fileManager.getLatestSnapshots().forEach((name, millis, timestamp, weight, height, bmi, category) -> {
+            json.append(json.charAt(json.length() - 1) == '[' ? "" : ",")
+                .append("{\"name\":").append(quote(name))
+                .append(",\"timestamp\":").append(quote(timestamp))
+                .append(",\"weight\":").append(weight)
+                .append(",\"height\":").append(height)
+                .append(",\"bmi\":").append(bmi)
+                .append(",\"category\":").append(quote(category))
+                .append('}');
+        });
+        json.append("]}");
+        sendJson(exchange, 200, json);
+    }
+
+    /**
+     * Thrown by request validation; turned into an error response
+     */
+    private static class RequestException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        final int status;
+
+        RequestException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    private static void requireMethod(String method, String expected) {
+        if (!method.equals(expected)) {
+            throw new RequestException(405, "Use " + expected);
+        }
+    }
+
+    private void requireUser(String name) {
+        if (fileManager.getUserDetails(name) == null) {
+            throw new RequestException(404, "User not found: " + name);
+        }
+    }
+
+    private static String requireName(String name) {
+        if (name == null || name.trim().isEmpty()) {
+            throw new RequestException(400, "Missing parameter: name");
+        }
+        name = name.trim();
+        // Names become file names and | separated fields
+        for (int i = 0; i < name.length(); i++) {
+            if ("|/\\:*?\"<>".indexOf(name.charAt(i)) >= 0 || Character.isISOControl(name.charAt(i))) {
+                throw new RequestException(400, "Invalid name: " + name);
+            }
+        }
+        return name;
+    }
+
+    private static double requireWeight(Map<String, String> params) {
+        return requireNumber(params, "weight", Double.MIN_VALUE, 500);
+    }
+
+    private static double requireHeight(Map<String, String> params) {
+        return requireNumber(params, "height", Double.MIN_VALUE, 300);
+    }
+
+    private static double requireNumber(Map<String, String> params, String key, double min, double max) {
+        if (!params.containsKey(key)) {
+            throw new RequestException(400, "Missing parameter: " + key);
+        }
+        return requireNumber(params, key, min, max, 0);
+    }
+
+    /**
+     * Parse a numeric parameter within [min, max], or return the default if absent
+     */
+    private static double requireNumber(Map<String, String> params, String key, double min, double max,
+                                        double defaultValue) {
+        String value = params.get(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        double number;
+        try {
+            number = Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            throw new RequestException(400, "Parameter " + key + " must be numeric");
+        }
+        if (!(number >= min && number <= max)) {
+            throw new RequestException(400, "Parameter " + key + " out of range: " + value);
+        }
+        return number;
+    }
+
+    private static Map<String, String> parseParams(String raw) {
+        Map<String, String> params = new HashMap<>();
+        if (raw == null || raw.isEmpty()) {
+            return params;
+        }
+        for (String pair : raw.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals > 0) {
+                params.put(decode(pair.substring(0, equals)), decode(pair.substring(equals + 1)));
+            }
+        }
+        return params;
+    }
+
+    private static String decode(String value) {
+        try {
+            return URLDecoder.decode(value, "UTF-8");
+        } catch (UnsupportedEncodingException | IllegalArgumentException e) {
+            throw new RequestException(400, "Malformed encoding: " + value);
+        }
+    }
+
+    private static String readBody(HttpExchange exchange) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        try (InputStream in = exchange.getRequestBody()) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                body.write(buffer, 0, read);
+            }
+        }
+        return new String(body.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        sendJson(exchange, status, new StringBuilder("{\"error\":").append(quote(message)).append('}'));
+    }
+
+    /**
+     * Send a complete JSON body with a known length so the connection can be kept alive
+     */
+    private static void sendJson(HttpExchange exchange, int status, CharSequence json) throws IOException {
+        byte[] bytes = json.toString().getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static String number(double value) {
+        return Double.isNaN(value) || Double.isInfinite(value) ? "null" : Double.toString(value);
+    }
+
+    private static String quote(String value) {
+        if (value == null) {
+            return "null";
+        }
+        StringBuilder quoted = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < 0x20) {
+                quoted.append(String.format("\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    /**
+     * Command line entry point
+     */
+    public static void main(String[] args) {
+        int port = DEFAULT_PORT;
+        String bind = null;
+        int threads = Math.max(8, Runtime.getRuntime().availableProcessors() * 4);
+        boolean binary = false;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--port") && i + 1 < args.length) {
+                port = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--bind") && i + 1 < args.length) {
+                bind = args[++i];
+            } else if (args[i].equals("--threads") && i + 1 < args.length) {
+                threads = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--binary")) {
+                binary = true;
+            } else {
+                System.out.println("Usage: java BMIHttpServer [--port n] [--bind address] [--threads n] [--binary]");
+                return;
+            }
+        }
+
+        FileManager fileManager = new FileManager(binary);
+        try {
+            InetAddress address = bind != null ? InetAddress.getByName(bind) : InetAddress.getLoopbackAddress();
+            BMIHttpServer httpServer = new BMIHttpServer(fileManager, address, port, threads);
+            // Finish running requests, then save the stores so the next start has nothing to replay
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                httpServer.stop(2);
+                fileManager.close();
+            }, "http-shutdown"));
+            httpServer.start();
+            System.out.println("BMI service listening on " + httpServer.getBindAddress().getHostAddress() +
+                               ":" + httpServer.getPort() + " with " + threads + " threads");
+            if (httpServer.getBindAddress().isAnyLocalAddress()) {
+                System.out.println("Warning: the API has no authentication and is reachable from the network");
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            fileManager.close();
+        }
+    }
+}
@@ -5,6 +5,7 @@
 
 import javax.swing.*;
 import javax.swing.border.*;
+import javax.swing.table.AbstractTableModel;
 import java.awt.*;
 import java.awt.event.*;
 
@@ -312,17 +313,17 @@ public class BMITrackerGUI extends JFrame {
         
         // Color code the category
         Color categoryColor;
-        switch (calculator.getCategory()) {
-            case "Underweight":
+        switch (calculator.getCategoryCode()) {
+            case BMICalculator.UNDERWEIGHT:
                 categoryColor = new Color(255, 140, 0);
                 break;
-            case "Normal weight":
+            case BMICalculator.NORMAL_WEIGHT:
                 categoryColor = new Color(34, 139, 34);
                 break;
-            case "Overweight":
+            case BMICalculator.OVERWEIGHT:
                 categoryColor = new Color(255, 165, 0);
                 break;
-            case "Obese":
+            case BMICalculator.OBESE:
                 categoryColor = new Color(220, 20, 60);
                 break;
             default:
@@ -372,18 +373,30 @@ public class BMITrackerGUI extends JFrame {
             return;
         }
         
-        StringBuilder history = new StringBuilder();
-        history.append("=== BMI History ===\n\n");
-        
-        for (HealthRecord.RecordEntry entry : healthRecord.getRecords()) {
-            history.append(entry.toString()).append("\n\n");
-        }
-        
-        JTextArea textArea = new JTextArea(history.toString());
-        textArea.setEditable(false);
-        textArea.setFont(new Font("Arial", Font.PLAIN, 12));
+        // The table only renders the rows in view
+        JTable table = new JTable(new AbstractTableModel() {
+            private final String[] columns = {"#", "Date", "Weight (kg)", "Height (cm)", "BMI", "Category"};
+            
+            public int getRowCount() { return healthRecord.getRecordCount(); }
+            public int getColumnCount() { return columns.length; }
+            public String getColumnName(int column) { return columns[column]; }
+            
+            public Object getValueAt(int row, int column) {
+                HealthRecord.RecordEntry entry = healthRecord.getRecords().get(row);
+                switch (column) {
+                    case 0: return row + 1;
+                    case 1: return entry.getFormattedDate();
+                    case 2: return String.format("%.1f", entry.getWeight());
+                    case 3: return String.format("%.1f", entry.getHeight());
+                    case 4: return String.format("%.2f", entry.getBMI());
+                    default: return entry.getCategory();
+                }
+            }
+        });
+        table.setFont(new Font("Arial", Font.PLAIN, 12));
+        table.setFillsViewportHeight(true);
         
-        JScrollPane scrollPane = new JScrollPane(textArea);
+        JScrollPane scrollPane = new JScrollPane(table);
         scrollPane.setPreferredSize(new Dimension(500, 300));
         
         JOptionPane.showMessageDialog(this, 
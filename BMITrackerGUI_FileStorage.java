@@ -1,14 +1,16 @@
 /**
  * BMITrackerGUI_FileStorage.java - Main GUI with File-based Storage
  * Demonstrates file I/O operations with GUI
- * Data stored in: C:\yomp
+ * Data stored in the configured data directory (see StorageConfig)
  */
 
 import javax.swing.*;
 import javax.swing.border.*;
 import java.awt.*;
 import java.awt.event.*;
-import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.io.File;
 import java.io.IOException;
 
@@ -20,9 +22,12 @@ public class BMITrackerGUI_FileStorage extends JFrame {
     private JButton loadUserBtn, exportBtn, openFolderBtn;
     private JTextArea resultArea;
     private JLabel bmiLabel, categoryLabel, statusLabel;
+    private JProgressBar progressBar;
+    private JButton cancelBtn;
     
-    // File Manager
+    // File Manager, used only through the background service
     private FileManager fileManager;
+    private FileManagerService fileService;
     
     /**
      * Constructor to setup GUI
@@ -30,15 +35,23 @@ public class BMITrackerGUI_FileStorage extends JFrame {
     public BMITrackerGUI_FileStorage() {
         // Initialize file manager
         fileManager = new FileManager();
+        fileService = new FileManagerService(fileManager);
         
         // Frame setup
         setTitle("Personal Health BMI Tracker - File Storage");
         setSize(700, 850);
-        setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        setDefaultCloseOperation(JFrame.DO_NOTHING_ON_CLOSE);
         setLocationRelativeTo(null);
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                exitApplication();
+            }
+        });
         
         // Setup UI
         initializeComponents();
+        fileService.setProgressListener(this::showProgress);
         refreshUserCombo();
         
         setVisible(true);
@@ -312,11 +325,24 @@ public class BMITrackerGUI_FileStorage extends JFrame {
         panel.setBackground(new Color(220, 230, 240));
         panel.setBorder(new BevelBorder(BevelBorder.LOWERED));
         
-        statusLabel = new JLabel("✓ File Storage Ready - Data: C:\\yomp");
+        statusLabel = new JLabel("✓ File Storage Ready - Data: " + fileManager.getDataDirectory());
         statusLabel.setFont(new Font("Arial", Font.PLAIN, 11));
         statusLabel.setForeground(new Color(0, 128, 0));
         
+        progressBar = new JProgressBar();
+        progressBar.setIndeterminate(true);
+        progressBar.setPreferredSize(new Dimension(100, 14));
+        progressBar.setVisible(false);
+        
+        cancelBtn = new JButton("Cancel");
+        cancelBtn.setFont(new Font("Arial", Font.PLAIN, 11));
+        cancelBtn.setMargin(new Insets(0, 6, 0, 6));
+        cancelBtn.setVisible(false);
+        cancelBtn.addActionListener(e -> fileService.cancelAll());
+        
         panel.add(statusLabel);
+        panel.add(progressBar);
+        panel.add(cancelBtn);
         return panel;
     }
     
@@ -350,18 +376,18 @@ public class BMITrackerGUI_FileStorage extends JFrame {
             // Create BMI Calculator
             BMICalculator calculator = new BMICalculator(name, age, gender, weight, height);
             
-            // Save to file
-            fileManager.saveUser(name, age, gender);
-            boolean saved = fileManager.saveBMIRecord(name, weight, height, 
-                                                     calculator.getBMI(), calculator.getCategory());
-            
-            if (saved) {
-                displayResults(calculator);
-                updateStatus("✓ BMI calculated and saved to C:\\yomp!", new Color(0, 128, 0));
-                refreshUserCombo();
-            } else {
-                updateStatus("✗ Error saving to file!", new Color(255, 0, 0));
-            }
+            // Save to file in the background
+            displayResults(calculator);
+            updateStatus("Saving...", new Color(70, 130, 180));
+            onComplete(fileService.saveBMIRecord(name, age, gender, weight, height,
+                                                 calculator.getBMI(), calculator.getCategory()), saved -> {
+                if (saved) {
+                    updateStatus("✓ BMI calculated and saved to " + fileManager.getDataDirectory() + "!", new Color(0, 128, 0));
+                    refreshUserCombo();
+                } else {
+                    updateStatus("✗ Error saving to file!", new Color(255, 0, 0));
+                }
+            });
             
         } catch (NumberFormatException e) {
             JOptionPane.showMessageDialog(this, 
@@ -381,11 +407,11 @@ public class BMITrackerGUI_FileStorage extends JFrame {
         categoryLabel.setText("Category: " + calculator.getCategory());
         
         Color categoryColor;
-        switch (calculator.getCategory()) {
-            case "Underweight": categoryColor = new Color(255, 140, 0); break;
-            case "Normal weight": categoryColor = new Color(34, 139, 34); break;
-            case "Overweight": categoryColor = new Color(255, 165, 0); break;
-            case "Obese": categoryColor = new Color(220, 20, 60); break;
+        switch (calculator.getCategoryCode()) {
+            case BMICalculator.UNDERWEIGHT: categoryColor = new Color(255, 140, 0); break;
+            case BMICalculator.NORMAL_WEIGHT: categoryColor = new Color(34, 139, 34); break;
+            case BMICalculator.OVERWEIGHT: categoryColor = new Color(255, 165, 0); break;
+            case BMICalculator.OBESE: categoryColor = new Color(220, 20, 60); break;
             default: categoryColor = Color.BLACK;
         }
         categoryLabel.setForeground(categoryColor);
@@ -431,17 +457,29 @@ public class BMITrackerGUI_FileStorage extends JFrame {
             return;
         }
         
-        FileManager.UserDetails user = fileManager.getUserDetails(selectedUser);
-        if (user != null) {
-            nameField.setText(user.getName());
-            ageField.setText(String.valueOf(user.getAge()));
-            genderCombo.setSelectedItem(user.getGender());
-            updateStatus("✓ User loaded: " + user.getName(), new Color(0, 128, 0));
-        } else {
-            JOptionPane.showMessageDialog(this, 
-                "Error loading user details!", 
-                "Load Error", JOptionPane.ERROR_MESSAGE);
-        }
+        onComplete(fileService.getUserDetails(selectedUser), user -> {
+            if (user != null) {
+                nameField.setText(user.getName());
+                ageField.setText(String.valueOf(user.getAge()));
+                genderCombo.setSelectedItem(user.getGender());
+                updateStatus("✓ User loaded: " + user.getName(), new Color(0, 128, 0));
+
+                // Pre-fill the last measurement; only the end of the history is read
+                onComplete(fileService.getRecentRecords(user.getName(), 1), recent -> {
+                    if (!recent.isEmpty() && user.getName().equals(nameField.getText())) {
+                        FileManager.BMIRecord latest = recent.get(0);
+                        weightField.setText(String.valueOf(latest.getWeight()));
+                        heightField.setText(String.valueOf(latest.getHeight()));
+                        updateStatus(String.format("✓ User loaded: %s (latest BMI %.2f, %s)", user.getName(),
+                                                   latest.getBmi(), latest.getTimestamp()), new Color(0, 128, 0));
+                    }
+                });
+            } else {
+                JOptionPane.showMessageDialog(this, 
+                    "Error loading user details!", 
+                    "Load Error", JOptionPane.ERROR_MESSAGE);
+            }
+        });
     }
     
     /**
@@ -456,36 +494,41 @@ public class BMITrackerGUI_FileStorage extends JFrame {
             return;
         }
         
-        ArrayList<FileManager.BMIRecord> records = fileManager.getUserRecords(name);
-        
-        if (records.isEmpty()) {
+        onComplete(fileService.openRecordPager(name), pager -> displayHistory(name, pager));
+    }
+    
+    /**
+     * Display BMI records in a table that loads pages on demand
+     */
+    private void displayHistory(String name, RecordPager pager) {
+        try {
+            if (pager.getRowCount() == 0) {
+                JOptionPane.showMessageDialog(this, 
+                    "No records found for " + name + "!", 
+                    "No History", JOptionPane.INFORMATION_MESSAGE);
+                return;
+            }
+            
+            JTable table = new JTable(new RecordTableModel(pager, fileService));
+            table.setFont(new Font("Monospaced", Font.PLAIN, 12));
+            table.setFillsViewportHeight(true);
+            table.getColumnModel().getColumn(0).setPreferredWidth(50);
+            table.getColumnModel().getColumn(1).setPreferredWidth(150);
+            
+            JScrollPane scrollPane = new JScrollPane(table);
+            scrollPane.setPreferredSize(new Dimension(650, 400));
+            
             JOptionPane.showMessageDialog(this, 
-                "No records found for " + name + "!", 
-                "No History", JOptionPane.INFORMATION_MESSAGE);
-            return;
-        }
-        
-        StringBuilder history = new StringBuilder();
-        history.append("=== BMI History for ").append(name).append(" ===\n\n");
-        history.append("Total Records: ").append(records.size()).append("\n\n");
-        
-        int count = 1;
-        for (FileManager.BMIRecord record : records) {
-            history.append("Record #").append(count++).append("\n");
-            history.append(record.toString()).append("\n\n");
+                scrollPane, 
+                "BMI History for " + name + " - " + pager.getRowCount() + " Record(s)", 
+                JOptionPane.INFORMATION_MESSAGE);
+        } finally {
+            try {
+                pager.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
         }
-        
-        JTextArea textArea = new JTextArea(history.toString());
-        textArea.setEditable(false);
-        textArea.setFont(new Font("Monospaced", Font.PLAIN, 12));
-        
-        JScrollPane scrollPane = new JScrollPane(textArea);
-        scrollPane.setPreferredSize(new Dimension(550, 400));
-        
-        JOptionPane.showMessageDialog(this, 
-            scrollPane, 
-            "BMI History - " + records.size() + " Record(s)", 
-            JOptionPane.INFORMATION_MESSAGE);
     }
     
     /**
@@ -500,8 +543,13 @@ public class BMITrackerGUI_FileStorage extends JFrame {
             return;
         }
         
-        FileManager.BMIStatistics stats = fileManager.getUserStatistics(name);
-        
+        onComplete(fileService.getUserStatistics(name), stats -> displayStatistics(name, stats));
+    }
+    
+    /**
+     * Display loaded statistics
+     */
+    private void displayStatistics(String name, FileManager.BMIStatistics stats) {
         if (stats == null) {
             JOptionPane.showMessageDialog(this, 
                 "No statistics available for " + name + "!", 
@@ -541,17 +589,18 @@ public class BMITrackerGUI_FileStorage extends JFrame {
             JOptionPane.YES_NO_OPTION);
         
         if (confirm == JOptionPane.YES_OPTION) {
-            boolean deleted = fileManager.deleteUserRecords(name);
-            if (deleted) {
-                JOptionPane.showMessageDialog(this, 
-                    "All records deleted for " + name + "!", 
-                    "Success", JOptionPane.INFORMATION_MESSAGE);
-                updateStatus("✓ Records deleted for " + name, new Color(0, 128, 0));
-            } else {
-                JOptionPane.showMessageDialog(this, 
-                    "No records found to delete!", 
-                    "Error", JOptionPane.ERROR_MESSAGE);
-            }
+            onComplete(fileService.deleteUserRecords(name), deleted -> {
+                if (deleted) {
+                    JOptionPane.showMessageDialog(this, 
+                        "All records deleted for " + name + "!", 
+                        "Success", JOptionPane.INFORMATION_MESSAGE);
+                    updateStatus("✓ Records deleted for " + name, new Color(0, 128, 0));
+                } else {
+                    JOptionPane.showMessageDialog(this, 
+                        "No records found to delete!", 
+                        "Error", JOptionPane.ERROR_MESSAGE);
+                }
+            });
         }
     }
     
@@ -574,19 +623,20 @@ public class BMITrackerGUI_FileStorage extends JFrame {
             JOptionPane.WARNING_MESSAGE);
         
         if (confirm == JOptionPane.YES_OPTION) {
-            boolean deleted = fileManager.deleteUser(name);
-            if (deleted) {
-                JOptionPane.showMessageDialog(this, 
-                    "User '" + name + "' and all records deleted successfully!", 
-                    "Success", JOptionPane.INFORMATION_MESSAGE);
-                clearFields();
-                refreshUserCombo();
-                updateStatus("✓ User deleted: " + name, new Color(0, 128, 0));
-            } else {
-                JOptionPane.showMessageDialog(this, 
-                    "User not found or error deleting!", 
-                    "Error", JOptionPane.ERROR_MESSAGE);
-            }
+            onComplete(fileService.deleteUser(name), deleted -> {
+                if (deleted) {
+                    JOptionPane.showMessageDialog(this, 
+                        "User '" + name + "' and all records deleted successfully!", 
+                        "Success", JOptionPane.INFORMATION_MESSAGE);
+                    clearFields();
+                    refreshUserCombo();
+                    updateStatus("✓ User deleted: " + name, new Color(0, 128, 0));
+                } else {
+                    JOptionPane.showMessageDialog(this, 
+                        "User not found or error deleting!", 
+                        "Error", JOptionPane.ERROR_MESSAGE);
+                }
+            });
         }
     }
     
@@ -602,19 +652,20 @@ public class BMITrackerGUI_FileStorage extends JFrame {
             return;
         }
         
-        String fileName = name.replaceAll("[^a-zA-Z0-9]", "_") + "_Report.txt";
-        boolean exported = fileManager.exportUserData(name, fileName);
-        
-        if (exported) {
-            JOptionPane.showMessageDialog(this, 
-                "Report exported successfully!\nFile: " + fileName + "\nLocation: C:\\yomp", 
-                "Export Successful", JOptionPane.INFORMATION_MESSAGE);
-            updateStatus("✓ Report exported: " + fileName, new Color(0, 128, 0));
-        } else {
-            JOptionPane.showMessageDialog(this, 
-                "Error exporting report or no data available!", 
-                "Export Failed", JOptionPane.ERROR_MESSAGE);
-        }
+        String fileName = FileManager.getReportFileName(name, ReportWriter.Format.TEXT);
+        updateStatus("Exporting " + fileName + "...", new Color(70, 130, 180));
+        onComplete(fileService.exportUserData(name, fileName), exported -> {
+            if (exported) {
+                JOptionPane.showMessageDialog(this, 
+                    "Report exported successfully!\nFile: " + fileName + "\nLocation: " + fileManager.getDataDirectory(), 
+                    "Export Successful", JOptionPane.INFORMATION_MESSAGE);
+                updateStatus("✓ Report exported: " + fileName, new Color(0, 128, 0));
+            } else {
+                JOptionPane.showMessageDialog(this, 
+                    "Error exporting report or no data available!", 
+                    "Export Failed", JOptionPane.ERROR_MESSAGE);
+            }
+        });
     }
     
     /**
@@ -622,11 +673,11 @@ public class BMITrackerGUI_FileStorage extends JFrame {
      */
     private void openDataFolder() {
         try {
-            Desktop.getDesktop().open(new File("C:\\yomp"));
+            Desktop.getDesktop().open(new File(fileManager.getDataDirectory()));
             updateStatus("✓ Opened data folder", new Color(0, 128, 0));
         } catch (IOException e) {
             JOptionPane.showMessageDialog(this, 
-                "Could not open folder!\nPath: C:\\yomp", 
+                "Could not open folder!\nPath: " + fileManager.getDataDirectory(), 
                 "Error", JOptionPane.ERROR_MESSAGE);
         }
     }
@@ -635,12 +686,13 @@ public class BMITrackerGUI_FileStorage extends JFrame {
      * Refresh user combo box
      */
     private void refreshUserCombo() {
-        userCombo.removeAllItems();
-        ArrayList<String> users = fileManager.getAllUsers();
-        for (String user : users) {
-            userCombo.addItem(user);
-        }
-        updateStatus("✓ User list refreshed (" + users.size() + " users)", new Color(0, 128, 0));
+        onComplete(fileService.getAllUsers(), users -> {
+            userCombo.removeAllItems();
+            for (String user : users) {
+                userCombo.addItem(user);
+            }
+            updateStatus("✓ User list refreshed (" + users.size() + " users)", new Color(0, 128, 0));
+        });
     }
     
     /**
@@ -651,6 +703,55 @@ public class BMITrackerGUI_FileStorage extends JFrame {
         statusLabel.setForeground(color);
     }
     
+    /**
+     * Show or hide the progress indicator as background tasks start and finish
+     */
+    private void showProgress(int activeTasks) {
+        progressBar.setVisible(activeTasks > 0);
+        cancelBtn.setVisible(activeTasks > 0);
+    }
+    
+    /**
+     * Handle the result of a background task on the event thread
+     */
+    private <T> void onComplete(CompletableFuture<T> future, Consumer<T> handler) {
+        future.whenComplete((result, error) -> SwingUtilities.invokeLater(() -> {
+            if (future.isCancelled()) {
+                updateStatus("✗ Operation cancelled", new Color(255, 140, 0));
+            } else if (error != null) {
+                error.printStackTrace();
+                updateStatus("✗ Error: " + error.getMessage(), new Color(255, 0, 0));
+            } else {
+                handler.accept(result);
+            }
+        }));
+    }
+    
+    /**
+     * Let pending saves, deletes and exports finish, close the storage, then exit
+     */
+    private void exitApplication() {
+        if (!isEnabled()) {
+            return;
+        }
+        setEnabled(false);
+        updateStatus("Finishing pending operations...", new Color(255, 140, 0));
+        fileService.shutdown();
+        Thread closer = new Thread(() -> {
+            try {
+                fileService.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+            fileManager.close();
+            SwingUtilities.invokeLater(() -> {
+                dispose();
+                System.exit(0);
+            });
+        }, "gui-shutdown");
+        closer.start();
+    }
+    
     /**
      * Main method
      */
@@ -0,0 +1,161 @@
+/**
+ * BatchScorer.java - Bulk BMI scoring over large arrays and off-heap buffers
+ * Splits the input into cache-sized chunks, scores each with the branch-free
+ * BMICalculator.score kernel and runs chunks in parallel on the common
+ * fork/join pool. Results match BMICalculator row for row.
+ *
+ * Off-heap input (e.g. a memory-mapped file viewed as a DoubleBuffer) is
+ * copied chunk by chunk into reusable per-thread arrays, so the kernel always
+ * runs over plain arrays the JIT can vectorize.
+ *
+ * On Java 17+ started with --add-modules jdk.incubator.vector, chunks are
+ * scored by VectorScoreKernel (vector/, built by the vector profile) instead,
+ * which issues SIMD instructions explicitly rather than relying on the JIT.
+ * Without the module, or with a plain javac build, the scalar kernel is used.
+ */
+
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.util.stream.IntStream;
+
+public class BatchScorer {
+    // Rows per chunk: three 8K double arrays plus an int array fit in L2
+    public static final int CHUNK_SIZE = 8192;
+
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+    private static final Kernel KERNEL = loadKernel();
+
+    /**
+     * Scores one chunk; same contract as BMICalculator.score
+     */
+    interface Kernel {
+        void score(double[] weights, double[] heights, double[] bmis, int[] categories,
+                   int offset, int length);
+    }
+
+    /**
+     * Per-thread staging arrays for buffer input
+     */
+    private static class Scratch {
+        final double[] weights = new double[CHUNK_SIZE];
+        final double[] heights = new double[CHUNK_SIZE];
+        final double[] bmis = new double[CHUNK_SIZE];
+        final int[] categories = new int[CHUNK_SIZE];
+    }
+
+    private BatchScorer() {
+    }
+
+    /**
+     * Whether chunks are scored with the Vector API kernel
+     */
+    public static boolean isVectorized() {
+        return !(KERNEL instanceof ScalarKernel);
+    }
+
+    private static class ScalarKernel implements Kernel {
+        @Override
+        public void score(double[] weights, double[] heights, double[] bmis, int[] categories,
+                          int offset, int length) {
+            BMICalculator.score(weights, heights, bmis, categories, offset, length);
+        }
+    }
+
+    /**
+     * Use the vector kernel if it was built and jdk.incubator.vector is available
+     */
+    private static Kernel loadKernel() {
+        try {
+            return (Kernel) Class.forName("VectorScoreKernel").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return new ScalarKernel();
+        }
+    }
+
+    /**
+     * Score whole arrays using all available cores
+     * @param categories Output category codes (may be null if not needed)
+     */
+    public static void score(double[] weights, double[] heights, double[] bmis, int[] categories) {
+        score(weights, heights, bmis, categories, 0, weights.length, true);
+    }
+
+    /**
+     * Score a range of rows
+     * @param parallel Whether to spread chunks over the fork/join pool
+     */
+    public static void score(double[] weights, double[] heights, double[] bmis, int[] categories,
+                             int offset, int length, boolean parallel) {
+        checkRange(weights.length, offset, length);
+        checkRange(heights.length, offset, length);
+        checkRange(bmis.length, offset, length);
+        if (categories != null) {
+            checkRange(categories.length, offset, length);
+        }
+
+        int chunks = chunkCount(length);
+        IntStream range = IntStream.range(0, chunks);
+        (parallel && chunks > 1 ? range.parallel() : range).forEach(chunk -> {
+            int start = offset + chunk * CHUNK_SIZE;
+            int size = Math.min(CHUNK_SIZE, offset + length - start);
+            KERNEL.score(weights, heights, bmis, categories, start, size);
+        });
+    }
+
+    /**
+     * Score the remaining rows of (possibly direct) buffers
+     * Rows are read from each input buffer's position up to the weights limit and
+     * written from each output buffer's position; buffer positions are not changed.
+     * @param categories Output category codes (may be null if not needed)
+     */
+    public static void score(DoubleBuffer weights, DoubleBuffer heights, DoubleBuffer bmis,
+                             IntBuffer categories, boolean parallel) {
+        int length = weights.remaining();
+        if (heights.remaining() < length || bmis.remaining() < length ||
+            (categories != null && categories.remaining() < length)) {
+            throw new IllegalArgumentException("Buffers hold fewer than " + length + " rows");
+        }
+
+        int chunks = chunkCount(length);
+        IntStream range = IntStream.range(0, chunks);
+        (parallel && chunks > 1 ? range.parallel() : range).forEach(chunk -> {
+            int start = chunk * CHUNK_SIZE;
+            int size = Math.min(CHUNK_SIZE, length - start);
+            Scratch scratch = SCRATCH.get();
+
+            // Absolute views so chunks on different threads never share a position
+            slice(weights, start, size).get(scratch.weights, 0, size);
+            slice(heights, start, size).get(scratch.heights, 0, size);
+            KERNEL.score(scratch.weights, scratch.heights, scratch.bmis,
+                         categories != null ? scratch.categories : null, 0, size);
+            slice(bmis, start, size).put(scratch.bmis, 0, size);
+            if (categories != null) {
+                slice(categories, start, size).put(scratch.categories, 0, size);
+            }
+        });
+    }
+
+    private static DoubleBuffer slice(DoubleBuffer buffer, int start, int size) {
+        DoubleBuffer view = buffer.duplicate();
+        view.position(buffer.position() + start);
+        view.limit(buffer.position() + start + size);
+        return view;
+    }
+
+    private static IntBuffer slice(IntBuffer buffer, int start, int size) {
+        IntBuffer view = buffer.duplicate();
+        view.position(buffer.position() + start);
+        view.limit(buffer.position() + start + size);
+        return view;
+    }
+
+    private static int chunkCount(int length) {
+        return (length + CHUNK_SIZE - 1) / CHUNK_SIZE;
+    }
+
+    private static void checkRange(int arrayLength, int offset, int length) {
+        if (offset < 0 || length < 0 || offset + length > arrayLength) {
+            throw new IndexOutOfBoundsException("Range " + offset + "+" + length + " of " + arrayLength);
+        }
+    }
+}
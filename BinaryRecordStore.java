@@ -0,0 +1,202 @@
+/**
+ * BinaryRecordStore.java - Compact binary storage of BMI records
+ * Each user's history is kept in <name>_records.bin as fixed-width rows:
+ * epoch millis (long), weight, height, bmi (double) and a category code (byte)
+ */
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+public class BinaryRecordStore implements RecordStore {
+    public static final String RECORDS_EXTENSION = "_records.bin";
+
+    // File header: magic number followed by format version
+    public static final int MAGIC = 0x424D4952; // "BMIR"
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 8;
+    public static final int RECORD_SIZE = 8 + 8 + 8 + 8 + 1;
+
+    // Category codes, indexed by their byte value
+    static final String[] CATEGORIES = {
+        BMICalculator.categoryName(BMICalculator.UNDERWEIGHT),
+        BMICalculator.categoryName(BMICalculator.NORMAL_WEIGHT),
+        BMICalculator.categoryName(BMICalculator.OVERWEIGHT),
+        BMICalculator.categoryName(BMICalculator.OBESE)
+    };
+
+    private final File directory;
+
+    /**
+     * Constructor
+     * @param directory Directory holding the .bin record files
+     */
+    public BinaryRecordStore(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Get the binary records file of a user
+     */
+    @Override
+    public File getRecordFile(String name) {
+        return new File(directory, name + RECORDS_EXTENSION);
+    }
+
+    /**
+     * Check whether a user has a binary records file
+     */
+    @Override
+    public boolean exists(String name) {
+        return getRecordFile(name).exists();
+    }
+
+    /**
+     * Append records to a user's file, writing the header for a new file
+     * A torn trailing row is cut off first so new rows stay aligned
+     */
+    @Override
+    public void append(String name, List<FileManager.BMIRecord> records) throws IOException {
+        File file = getRecordFile(name);
+        boolean newFile = file.length() < HEADER_SIZE;
+
+        FileOutputStream stream = new FileOutputStream(file, !newFile);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream))) {
+            if (!newFile) {
+                stream.getChannel().truncate(HEADER_SIZE + countRecords(file) * RECORD_SIZE);
+            }
+            if (newFile) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+            }
+            for (FileManager.BMIRecord record : records) {
+                out.writeLong(checkTimestamp(record));
+                out.writeDouble(record.getWeight());
+                out.writeDouble(record.getHeight());
+                out.writeDouble(record.getBmi());
+                out.writeByte(toCategoryCode(record.getCategory()));
+            }
+        }
+    }
+
+    /**
+     * Read every record of a user
+     * A torn trailing row (e.g. after a crash mid-append) is ignored
+     */
+    @Override
+    public ArrayList<FileManager.BMIRecord> readRecords(String name) throws IOException {
+        File file = getRecordFile(name);
+        ArrayList<FileManager.BMIRecord> records = new ArrayList<>();
+        long count = countRecords(file);
+        if (count == 0) {
+            return records;
+        }
+
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file), 64 * 1024))) {
+            checkHeader(in, file);
+            for (long i = 0; i < count; i++) {
+                long timestamp = in.readLong();
+                double weight = in.readDouble();
+                double height = in.readDouble();
+                double bmi = in.readDouble();
+                byte category = in.readByte();
+                records.add(new FileManager.BMIRecord(timestamp, weight, height, bmi, toCategoryName(category)));
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Open a cursor over a user's binary records file
+     */
+    @Override
+    public RecordCursor openCursor(String name) throws IOException {
+        return RecordFileReader.open(getRecordFile(name));
+    }
+
+    /**
+     * Read the last complete rows of a user's binary records file with one seek
+     */
+    @Override
+    public ArrayList<FileManager.BMIRecord> readLastRecords(String name, int count) throws IOException {
+        File file = getRecordFile(name);
+        long total = countRecords(file);
+        int rows = (int) Math.min(Math.max(count, 0), total);
+        ArrayList<FileManager.BMIRecord> records = new ArrayList<>(rows);
+        if (rows == 0) {
+            return records;
+        }
+
+        byte[] bytes = new byte[rows * RECORD_SIZE];
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            raf.seek(HEADER_SIZE + (total - rows) * RECORD_SIZE);
+            raf.readFully(bytes);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        for (int i = 0; i < rows; i++) {
+            int at = i * RECORD_SIZE;
+            records.add(new FileManager.BMIRecord(buffer.getLong(at), buffer.getDouble(at + 8),
+                                                  buffer.getDouble(at + 16), buffer.getDouble(at + 24),
+                                                  toCategoryName(buffer.get(at + 32))));
+        }
+        return records;
+    }
+
+    /**
+     * Number of complete rows in a user's binary records file
+     */
+    @Override
+    public long countRecords(String name) {
+        return countRecords(getRecordFile(name));
+    }
+
+    /**
+     * Delete a user's binary records file
+     */
+    @Override
+    public boolean delete(String name) {
+        File file = getRecordFile(name);
+        return file.exists() && file.delete();
+    }
+
+    /**
+     * Number of complete rows in a binary records file
+     */
+    public static long countRecords(File file) {
+        long payload = file.length() - HEADER_SIZE;
+        return payload > 0 ? payload / RECORD_SIZE : 0;
+    }
+
+    /**
+     * Map a category name to its one-byte code
+     */
+    public static byte toCategoryCode(String category) {
+        return (byte) BMICalculator.categoryCode(category);
+    }
+
+    /**
+     * Map a one-byte code back to its category name
+     */
+    public static String toCategoryName(byte code) {
+        return BMICalculator.categoryName(code);
+    }
+
+    private static void checkHeader(DataInputStream in, File file) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a binary records file: " + file);
+        }
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported records format version " + version + ": " + file);
+        }
+    }
+
+    static long checkTimestamp(FileManager.BMIRecord record) throws IOException {
+        if (!record.hasValidTimestamp()) {
+            throw new IOException("Invalid record timestamp: " + record.getTimestamp());
+        }
+        return record.getTimestampMillis();
+    }
+}
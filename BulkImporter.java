@@ -0,0 +1,539 @@
+/**
+ * BulkImporter.java - Bulk import of BMI measurements from CSV files
+ * Rows are grouped by user and each user's records file gets one buffered
+ * append per batch, instead of one open/write/close per measurement.
+ *
+ * CSV format (header row optional): name,weight,height[,dd/MM/yyyy HH:mm:ss[,age[,gender]]]
+ * Weight is in kg and height in cm; rows without a timestamp (or with an empty
+ * one) get the import time.
+ *
+ * Users that are not registered yet are registered when their first batch is
+ * written, with the age and gender of their first row that has them. Without
+ * those columns they get age 0 (unknown) and an empty gender, which can be
+ * filled in later from the GUI.
+ *
+ * In parallel mode rows are partitioned by user name hash across a fixed
+ * pool of workers. Each worker owns every file of its users, so workers
+ * never write to the same file and need no locking between them.
+ *
+ * Usage: java BulkImporter <file.csv> [--binary] [--batch rows] [--threads n]
+ */
+
+import java.io.*;
+import java.time.DateTimeException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+public class BulkImporter {
+    public static final int DEFAULT_BATCH_SIZE = 50000;
+    private static final int MAX_REJECTED_SAMPLES = 100;
+
+    // Rows handed to a worker at a time, and chunks queued per worker
+    private static final int CHUNK_SIZE = 2048;
+    private static final int QUEUE_CAPACITY = 16;
+
+    private final FileManager fileManager;
+    private final int batchSize;
+
+    /**
+     * Constructor
+     * @param fileManager Storage the records are written to
+     */
+    public BulkImporter(FileManager fileManager) {
+        this(fileManager, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Constructor
+     * @param fileManager Storage the records are written to
+     * @param batchSize Rows buffered in memory before they are written out
+     */
+    public BulkImporter(FileManager fileManager, int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive");
+        }
+        this.fileManager = fileManager;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Import a CSV file
+     */
+    public ImportResult importFile(File csvFile) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new FileReader(csvFile), 1024 * 1024)) {
+            return importCsv(reader);
+        }
+    }
+
+    /**
+     * Import a CSV file using several workers
+     * @param threads Number of workers; 1 imports on the calling thread
+     */
+    public ImportResult importFile(File csvFile, int threads) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new FileReader(csvFile), 1024 * 1024)) {
+            return threads <= 1 ? importCsv(reader) : importCsvParallel(reader, threads);
+        }
+    }
+
+    /**
+     * Import CSV rows from a reader
+     */
+    public ImportResult importCsv(BufferedReader reader) throws IOException {
+        ImportResult result = new ImportResult();
+        UserBatches batches = new UserBatches(result);
+        RowParser parser = new RowParser();
+        long start = System.currentTimeMillis();
+
+        String line;
+        long lineNumber = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            if (lineNumber == 1 && RowParser.isHeader(line)) {
+                continue;
+            }
+            result.rowsRead++;
+            if (parser.parse(line)) {
+                batches.add(parser.name, parser.record, parser.age, parser.gender);
+            } else {
+                result.reject(lineNumber, parser.error);
+            }
+        }
+        batches.flush();
+
+        result.elapsedMillis = System.currentTimeMillis() - start;
+        return result;
+    }
+
+    /**
+     * Import CSV rows with one reader thread feeding a fixed pool of workers
+     * Every row of a user goes to the same worker (chosen by name hash)
+     */
+    public ImportResult importCsvParallel(BufferedReader reader, int threads) throws IOException {
+        long start = System.currentTimeMillis();
+        ImportWorker[] workers = new ImportWorker[threads];
+        Chunk[] chunks = new Chunk[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new ImportWorker(Math.max(1, batchSize / threads));
+            workers[i].start();
+            chunks[i] = new Chunk();
+        }
+
+        ImportResult result = new ImportResult();
+        try {
+            String line;
+            long lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                if (lineNumber == 1 && RowParser.isHeader(line)) {
+                    continue;
+                }
+                int worker = Math.floorMod(RowParser.nameOf(line).hashCode(), threads);
+                Chunk chunk = chunks[worker];
+                chunk.add(lineNumber, line);
+                if (chunk.size == CHUNK_SIZE) {
+                    workers[worker].queue.put(chunk);
+                    chunks[worker] = new Chunk();
+                }
+            }
+
+            for (int i = 0; i < threads; i++) {
+                if (chunks[i].size > 0) {
+                    workers[i].queue.put(chunks[i]);
+                }
+                workers[i].queue.put(Chunk.END);
+            }
+            for (ImportWorker worker : workers) {
+                worker.join();
+            }
+        } catch (InterruptedException e) {
+            for (ImportWorker worker : workers) {
+                worker.interrupt();
+            }
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Import interrupted");
+        }
+
+        for (ImportWorker worker : workers) {
+            if (worker.failure != null) {
+                throw new IOException("Import worker failed", worker.failure);
+            }
+            result.merge(worker.result);
+        }
+        result.elapsedMillis = System.currentTimeMillis() - start;
+        return result;
+    }
+
+    /**
+     * A run of raw CSV lines bound for one worker
+     */
+    private static class Chunk {
+        static final Chunk END = new Chunk();
+
+        final String[] lines = new String[CHUNK_SIZE];
+        final long[] lineNumbers = new long[CHUNK_SIZE];
+        int size = 0;
+
+        void add(long lineNumber, String line) {
+            lineNumbers[size] = lineNumber;
+            lines[size] = line;
+            size++;
+        }
+    }
+
+    /**
+     * Worker owning the users whose name hash maps to it
+     */
+    private class ImportWorker extends Thread {
+        final BlockingQueue<Chunk> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        final ImportResult result = new ImportResult();
+        private final UserBatches batches;
+        volatile Throwable failure;
+
+        ImportWorker(int workerBatchSize) {
+            super("bulk-import-worker");
+            batches = new UserBatches(result, workerBatchSize);
+        }
+
+        @Override
+        public void run() {
+            RowParser parser = new RowParser();
+            boolean ended = false;
+            try {
+                Chunk chunk;
+                while ((chunk = queue.take()) != Chunk.END) {
+                    for (int i = 0; i < chunk.size; i++) {
+                        result.rowsRead++;
+                        if (parser.parse(chunk.lines[i])) {
+                            batches.add(parser.name, parser.record, parser.age, parser.gender);
+                        } else {
+                            result.reject(chunk.lineNumbers[i], parser.error);
+                        }
+                    }
+                }
+                ended = true;
+                batches.flush();
+            } catch (InterruptedException e) {
+                failure = e;
+            } catch (Throwable e) {
+                failure = e;
+                // Keep draining so the reader thread is never blocked on a full queue,
+                // unless the end marker was already taken and nothing more will come
+                try {
+                    while (!ended && queue.take() != Chunk.END) {
+                        // discard
+                    }
+                } catch (InterruptedException ignored) {
+                    // reader is shutting down anyway
+                }
+            }
+        }
+    }
+
+    /**
+     * Pending records grouped by user, flushed as one append per user
+     */
+    private class UserBatches {
+        private final ImportResult result;
+        private final int limit;
+        private final HashMap<String, ArrayList<FileManager.BMIRecord>> pending = new HashMap<>();
+        // Details from the rows, for users that may still need registering
+        private final HashMap<String, Integer> ages = new HashMap<>();
+        private final HashMap<String, String> genders = new HashMap<>();
+        private int pendingRows = 0;
+
+        UserBatches(ImportResult result) {
+            this(result, batchSize);
+        }
+
+        UserBatches(ImportResult result, int limit) {
+            this.result = result;
+            this.limit = limit;
+        }
+
+        void add(String name, FileManager.BMIRecord record, int age, String gender) {
+            ArrayList<FileManager.BMIRecord> records = pending.get(name);
+            if (records == null) {
+                records = new ArrayList<>();
+                pending.put(name, records);
+            }
+            records.add(record);
+            if (age > 0 && !ages.containsKey(name)) {
+                ages.put(name, age);
+            }
+            if (!gender.isEmpty() && !genders.containsKey(name)) {
+                genders.put(name, gender);
+            }
+            if (++pendingRows >= limit) {
+                flush();
+            }
+        }
+
+        void flush() {
+            for (Map.Entry<String, ArrayList<FileManager.BMIRecord>> entry : pending.entrySet()) {
+                int rows = entry.getValue().size();
+                if (!register(entry.getKey())) {
+                    result.rejected += rows;
+                    result.addSample("Could not register user " + entry.getKey());
+                } else if (fileManager.appendBMIRecords(entry.getKey(), entry.getValue())) {
+                    result.imported += rows;
+                    result.users.add(entry.getKey());
+                } else {
+                    result.rejected += rows;
+                    result.addSample("Could not write " + rows + " record(s) for " + entry.getKey());
+                }
+            }
+            pending.clear();
+            pendingRows = 0;
+        }
+
+        /**
+         * Register a user seen for the first time; a user's rows all go to one
+         * worker, so no other worker registers the same name concurrently
+         */
+        private boolean register(String name) {
+            if (result.registered.contains(name) || fileManager.getUserDetails(name) != null) {
+                return true;
+            }
+            Integer age = ages.get(name);
+            String gender = genders.get(name);
+            if (!fileManager.saveUser(name, age != null ? age : 0, gender != null ? gender : "")) {
+                return false;
+            }
+            result.registered.add(name);
+            ages.remove(name);
+            genders.remove(name);
+            return true;
+        }
+    }
+
+    /**
+     * Parses and validates one CSV row; not thread-safe (holds the last parsed row)
+     */
+    private static class RowParser {
+        private final long importTime = Timestamps.now();
+
+        String name;
+        FileManager.BMIRecord record;
+        int age;
+        String gender;
+        String error;
+
+        /**
+         * User name of a raw line, used for partitioning
+         */
+        static String nameOf(String line) {
+            int comma = line.indexOf(',');
+            return unquote(comma >= 0 ? line.substring(0, comma) : line);
+        }
+
+        static boolean isHeader(String line) {
+            String[] fields = line.split(",");
+            if (fields.length < 2) {
+                return false;
+            }
+            try {
+                Double.parseDouble(unquote(fields[1]));
+                return false;
+            } catch (NumberFormatException e) {
+                return true;
+            }
+        }
+
+        boolean parse(String line) {
+            String[] fields = line.split(",");
+            if (fields.length < 3 || fields.length > 6) {
+                error = "Expected name,weight,height[,timestamp[,age[,gender]]]";
+                return false;
+            }
+
+            name = unquote(fields[0]);
+            if (name.isEmpty() || !isValidName(name)) {
+                error = "Invalid name: " + fields[0];
+                return false;
+            }
+
+            double weight;
+            double height;
+            try {
+                weight = Double.parseDouble(unquote(fields[1]));
+                height = Double.parseDouble(unquote(fields[2]));
+            } catch (NumberFormatException e) {
+                error = "Weight and height must be numeric";
+                return false;
+            }
+            if (weight <= 0 || weight > 500) {
+                error = "Invalid weight (0-500 kg): " + weight;
+                return false;
+            }
+            if (height <= 0 || height > 300) {
+                error = "Invalid height (0-300 cm): " + height;
+                return false;
+            }
+
+            long timestamp = importTime;
+            String text = fields.length >= 4 ? unquote(fields[3]) : "";
+            if (!text.isEmpty()) {
+                try {
+                    timestamp = Timestamps.parse(text);
+                } catch (DateTimeException e) {
+                    error = "Invalid timestamp (" + Timestamps.PATTERN + "): " + text;
+                    return false;
+                }
+            }
+
+            age = 0;
+            String ageText = fields.length >= 5 ? unquote(fields[4]) : "";
+            if (!ageText.isEmpty()) {
+                try {
+                    age = Integer.parseInt(ageText);
+                } catch (NumberFormatException e) {
+                    age = -1;
+                }
+                if (age < 1 || age > 150) {
+                    error = "Invalid age (1-150): " + ageText;
+                    return false;
+                }
+            }
+            gender = fields.length == 6 ? unquote(fields[5]) : "";
+            if (!isValidName(gender)) {
+                error = "Invalid gender: " + fields[5];
+                return false;
+            }
+
+            double bmi = BMICalculator.computeBMI(weight, height);
+            record = new FileManager.BMIRecord(timestamp, weight, height, BMICalculator.roundBMI(bmi),
+                                               BMICalculator.categoryName(BMICalculator.categoryCode(bmi)));
+            return true;
+        }
+
+        /**
+         * Names become file names and are stored in |-separated files
+         */
+        private static boolean isValidName(String name) {
+            for (int i = 0; i < name.length(); i++) {
+                if ("|/\\:*?\"<>".indexOf(name.charAt(i)) >= 0 || Character.isISOControl(name.charAt(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static String unquote(String field) {
+            String value = field.trim();
+            if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+                value = value.substring(1, value.length() - 1).trim();
+            }
+            return value;
+        }
+    }
+
+    /**
+     * Outcome of an import run
+     */
+    public static class ImportResult {
+        private long rowsRead = 0;
+        private long imported = 0;
+        private long rejected = 0;
+        private long elapsedMillis = 0;
+        private final HashSet<String> users = new HashSet<>();
+        private final HashSet<String> registered = new HashSet<>();
+        private final ArrayList<String> rejectedSamples = new ArrayList<>();
+
+        private void merge(ImportResult other) {
+            rowsRead += other.rowsRead;
+            imported += other.imported;
+            rejected += other.rejected;
+            users.addAll(other.users);
+            registered.addAll(other.registered);
+            for (String sample : other.rejectedSamples) {
+                addSample(sample);
+            }
+        }
+
+        private void reject(long lineNumber, String reason) {
+            rejected++;
+            addSample("Line " + lineNumber + ": " + reason);
+        }
+
+        private void addSample(String message) {
+            if (rejectedSamples.size() < MAX_REJECTED_SAMPLES) {
+                rejectedSamples.add(message);
+            }
+        }
+
+        // Getters
+        public long getRowsRead() { return rowsRead; }
+        public long getImported() { return imported; }
+        public long getRejected() { return rejected; }
+        public int getUserCount() { return users.size(); }
+        public int getRegisteredCount() { return registered.size(); }
+        public long getElapsedMillis() { return elapsedMillis; }
+        public ArrayList<String> getRejectedSamples() { return rejectedSamples; }
+
+        public double getRowsPerSecond() {
+            return elapsedMillis > 0 ? rowsRead * 1000.0 / elapsedMillis : rowsRead;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Rows read: %d\nImported: %d\nRejected: %d\nUsers: %d (%d newly registered)\n" +
+                               "Time: %.2f s (%.0f rows/s)",
+                               rowsRead, imported, rejected, users.size(), registered.size(),
+                               elapsedMillis / 1000.0, getRowsPerSecond());
+        }
+    }
+
+    /**
+     * Command line entry point
+     */
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.out.println("Usage: java BulkImporter <file.csv> [--binary] [--batch rows] [--threads n]");
+            return;
+        }
+
+        File csvFile = null;
+        boolean binary = false;
+        int batchSize = DEFAULT_BATCH_SIZE;
+        int threads = 1;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--binary")) {
+                binary = true;
+            } else if (args[i].equals("--batch") && i + 1 < args.length) {
+                batchSize = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--threads") && i + 1 < args.length) {
+                threads = Integer.parseInt(args[++i]);
+            } else {
+                csvFile = new File(args[i]);
+            }
+        }
+        if (csvFile == null || !csvFile.exists()) {
+            System.out.println("CSV file not found: " + csvFile);
+            return;
+        }
+
+        FileManager fileManager = new FileManager(binary);
+        try {
+            BulkImporter importer = new BulkImporter(fileManager, batchSize);
+            ImportResult result = importer.importFile(csvFile, threads);
+            System.out.println(result);
+            for (String sample : result.getRejectedSamples()) {
+                System.out.println("  Rejected - " + sample);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            fileManager.close();
+        }
+    }
+}
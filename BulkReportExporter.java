@@ -0,0 +1,370 @@
+/**
+ * BulkReportExporter.java - Regenerates every user's report in one job
+ * Users are exported by a fixed pool of workers that pull names from a
+ * shared list, so memory stays bounded however many users there are.
+ * Disk writes can be throttled to a byte rate, so a large run does not
+ * starve the interactive application of I/O.
+ *
+ * Each finished user is recorded in a checkpoint file named after the day
+ * and format of the run. If the job dies, running it again the same day in
+ * the same format skips the users already done. Reports are written
+ * atomically, so a user interrupted mid-export is simply exported again.
+ * The checkpoint is removed once every user has been exported; users with
+ * no records are skipped and do not hold it back.
+ *
+ * Report files carry a hash of the user name (see
+ * FileManager.getReportFileName), so no two users share a file.
+ * The GUI's export uses the same name, so a user has one report per format.
+ *
+ * Usage: java BulkReportExporter [--threads n] [--max-mb-per-sec n] [--format txt|csv|json] [--binary]
+ */
+
+import java.io.*;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class BulkReportExporter {
+    private static final String CHECKPOINT_PREFIX = "bulk_export_";
+    private static final String CHECKPOINT_EXTENSION = ".checkpoint";
+    private static final int MAX_FAILED_SAMPLES = 100;
+    private static final long PROGRESS_INTERVAL_MILLIS = 500;
+    private static final int CHECKPOINT_SYNC_INTERVAL = 1000;
+
+    private final FileManager fileManager;
+    private final int threads;
+    private final ReportWriter.Format format;
+    private final RateLimiter rateLimiter;
+    private volatile boolean cancelled = false;
+
+    /**
+     * Receives progress updates from worker threads
+     */
+    public interface ProgressListener {
+        void progress(int completed, int total);
+    }
+
+    /**
+     * Constructor
+     * @param fileManager File manager to export from
+     * @param threads Number of concurrent exports
+     * @param format Report format
+     * @param maxBytesPerSecond Report bytes written per second across all workers, or 0 for no limit
+     */
+    public BulkReportExporter(FileManager fileManager, int threads, ReportWriter.Format format,
+                              long maxBytesPerSecond) {
+        this.fileManager = fileManager;
+        this.threads = Math.max(1, threads);
+        this.format = format;
+        this.rateLimiter = maxBytesPerSecond > 0 ? new RateLimiter(maxBytesPerSecond) : null;
+    }
+
+    /**
+     * Stop handing out users; running exports finish and stay checkpointed
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Export every registered user, resuming from the checkpoint if one exists
+     * @param listener Progress listener, or null
+     */
+    public ExportResult exportAll(ProgressListener listener) throws IOException {
+        long start = System.currentTimeMillis();
+        File checkpointFile = getCheckpointFile(LocalDate.now());
+        removeStaleCheckpoints(checkpointFile);
+        HashSet<String> done = readCheckpoint(checkpointFile);
+
+        ArrayList<String> names = fileManager.getAllUsers();
+        List<String> pending = new ArrayList<>();
+        for (String name : names) {
+            if (!done.contains(name)) {
+                pending.add(name);
+            }
+        }
+
+        ExportResult result = new ExportResult();
+        result.total = names.size();
+        result.skipped = names.size() - pending.size();
+
+        try (Checkpoint checkpoint = new Checkpoint(checkpointFile)) {
+            AtomicInteger next = new AtomicInteger();
+            AtomicInteger completed = new AtomicInteger(result.skipped);
+            long[] lastProgress = {0};
+
+            List<Thread> workers = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                Thread worker = new Thread(() -> {
+                    int index;
+                    while (!cancelled && (index = next.getAndIncrement()) < pending.size()) {
+                        String name = pending.get(index);
+                        exportOne(name, checkpoint, result);
+                        reportProgress(listener, completed.incrementAndGet(), result.total, lastProgress);
+                    }
+                }, "report-exporter-" + i);
+                worker.start();
+                workers.add(worker);
+            }
+            for (Thread worker : workers) {
+                worker.join();
+            }
+        } catch (InterruptedException e) {
+            cancelled = true;
+            Thread.currentThread().interrupt();
+        }
+
+        if (listener != null) {
+            listener.progress(result.skipped + result.getNoRecords() + result.getExported() + result.getFailed(),
+                              result.total);
+        }
+        result.elapsedMillis = System.currentTimeMillis() - start;
+
+        // Start the next run from scratch once everything made it out
+        if (!cancelled && result.getFailed() == 0) {
+            checkpointFile.delete();
+        }
+        return result;
+    }
+
+    /**
+     * Checkpoint of a run in this exporter's format on the given day
+     */
+    public File getCheckpointFile(LocalDate day) {
+        String extension = format.getExtension().substring(1);
+        return new File(fileManager.getDataDirectory(), CHECKPOINT_PREFIX +
+                        day.format(DateTimeFormatter.BASIC_ISO_DATE) + "_" + extension + CHECKPOINT_EXTENSION);
+    }
+
+    /**
+     * Delete checkpoints of this format left by unfinished runs on earlier days
+     * Their reports are out of date, so those users are exported again.
+     */
+    private void removeStaleCheckpoints(File current) {
+        String suffix = "_" + format.getExtension().substring(1) + CHECKPOINT_EXTENSION;
+        File[] files = current.getParentFile().listFiles((dir, fileName) ->
+                fileName.startsWith(CHECKPOINT_PREFIX) && fileName.endsWith(suffix));
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (!file.getName().equals(current.getName())) {
+                file.delete();
+            }
+        }
+    }
+
+    private void exportOne(String name, Checkpoint checkpoint, ExportResult result) {
+        String fileName = FileManager.getReportFileName(name, format);
+        try {
+            if (!fileManager.exportUserData(name, fileName, format)) {
+                // Nothing to export is not a failure, so it must not keep the checkpoint alive
+                if (fileManager.getUserDetails(name) == null || !hasRecords(name)) {
+                    result.skipNoRecords();
+                } else {
+                    result.fail(name + ": report could not be written");
+                }
+                return;
+            }
+            if (rateLimiter != null) {
+                rateLimiter.acquire(new File(fileManager.getDataDirectory(), fileName).length());
+            }
+            checkpoint.markDone(name);
+            result.succeed();
+        } catch (IOException e) {
+            result.fail(name + ": " + e.getMessage());
+        } catch (InterruptedException e) {
+            cancelled = true;
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private boolean hasRecords(String name) throws IOException {
+        try (RecordCursor cursor = fileManager.openRecordReader(name)) {
+            return cursor.next();
+        }
+    }
+
+    private static void reportProgress(ProgressListener listener, int completed, int total, long[] lastProgress) {
+        if (listener == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        synchronized (lastProgress) {
+            if (now - lastProgress[0] < PROGRESS_INTERVAL_MILLIS) {
+                return;
+            }
+            lastProgress[0] = now;
+        }
+        listener.progress(completed, total);
+    }
+
+    /**
+     * Names recorded by an earlier, unfinished run
+     * A torn last line from a crash only names a user that is exported again.
+     */
+    private static HashSet<String> readCheckpoint(File checkpointFile) throws IOException {
+        HashSet<String> done = new HashSet<>();
+        if (checkpointFile.exists()) {
+            try (BufferedReader reader = new BufferedReader(new FileReader(checkpointFile))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    done.add(line);
+                }
+            }
+        }
+        return done;
+    }
+
+    /**
+     * Append-only list of exported users, synced to disk every few entries
+     */
+    private static class Checkpoint implements Closeable {
+        private final FileOutputStream out;
+        private final Writer writer;
+        private int unsynced = 0;
+
+        Checkpoint(File file) throws IOException {
+            out = new FileOutputStream(file, true);
+            writer = new BufferedWriter(new OutputStreamWriter(out));
+        }
+
+        synchronized void markDone(String name) throws IOException {
+            writer.write(name);
+            writer.write('\n');
+            writer.flush();
+            if (++unsynced >= CHECKPOINT_SYNC_INTERVAL) {
+                out.getFD().sync();
+                unsynced = 0;
+            }
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            writer.flush();
+            out.getFD().sync();
+            writer.close();
+        }
+    }
+
+    /**
+     * Shared byte budget refilled at a fixed rate
+     */
+    private static class RateLimiter {
+        private final double bytesPerNano;
+        private long nextFreeNanos = System.nanoTime();
+
+        RateLimiter(long bytesPerSecond) {
+            this.bytesPerNano = bytesPerSecond / 1e9;
+        }
+
+        /**
+         * Account for bytes just written, sleeping until they fit in the budget
+         */
+        void acquire(long bytes) throws InterruptedException {
+            long wait;
+            synchronized (this) {
+                long now = System.nanoTime();
+                long start = Math.max(now, nextFreeNanos);
+                nextFreeNanos = start + (long) (bytes / bytesPerNano);
+                wait = nextFreeNanos - now;
+            }
+            if (wait > 0) {
+                Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+            }
+        }
+    }
+
+    /**
+     * Summary of a bulk export run
+     */
+    public static class ExportResult {
+        private int total = 0;
+        private int skipped = 0;
+        private int noRecords = 0;
+        private int exported = 0;
+        private int failed = 0;
+        private long elapsedMillis = 0;
+        private final ArrayList<String> failedSamples = new ArrayList<>();
+
+        private synchronized void succeed() {
+            exported++;
+        }
+
+        private synchronized void skipNoRecords() {
+            noRecords++;
+        }
+
+        private synchronized void fail(String message) {
+            failed++;
+            if (failedSamples.size() < MAX_FAILED_SAMPLES) {
+                failedSamples.add(message);
+            }
+        }
+
+        // Getters
+        public int getTotal() { return total; }
+        public int getSkipped() { return skipped; }
+        public synchronized int getNoRecords() { return noRecords; }
+        public synchronized int getExported() { return exported; }
+        public synchronized int getFailed() { return failed; }
+        public long getElapsedMillis() { return elapsedMillis; }
+        public synchronized ArrayList<String> getFailedSamples() { return new ArrayList<>(failedSamples); }
+
+        public double getUsersPerSecond() {
+            return elapsedMillis > 0 ? getExported() * 1000.0 / elapsedMillis : getExported();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Users: %d\nExported: %d\nAlready done: %d\nNo records: %d\nFailed: %d\n" +
+                               "Time: %.2f s (%.0f users/s)",
+                               total, getExported(), skipped, getNoRecords(), getFailed(),
+                               elapsedMillis / 1000.0, getUsersPerSecond());
+        }
+    }
+
+    /**
+     * Command line entry point
+     */
+    public static void main(String[] args) {
+        int threads = Runtime.getRuntime().availableProcessors();
+        long maxBytesPerSecond = 0;
+        ReportWriter.Format format = ReportWriter.Format.TEXT;
+        boolean binary = false;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--threads") && i + 1 < args.length) {
+                threads = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--max-mb-per-sec") && i + 1 < args.length) {
+                maxBytesPerSecond = Long.parseLong(args[++i]) * 1024 * 1024;
+            } else if (args[i].equals("--format") && i + 1 < args.length) {
+                format = ReportWriter.Format.forFileName("." + args[++i]);
+            } else if (args[i].equals("--binary")) {
+                binary = true;
+            } else {
+                System.out.println("Usage: java BulkReportExporter [--threads n] [--max-mb-per-sec n] " +
+                                   "[--format txt|csv|json] [--binary]");
+                return;
+            }
+        }
+
+        FileManager fileManager = new FileManager(binary);
+        try {
+            BulkReportExporter exporter = new BulkReportExporter(fileManager, threads,
+                                                                 format, maxBytesPerSecond);
+            ExportResult result = exporter.exportAll((completed, total) ->
+                    System.out.println("Progress: " + completed + " / " + total));
+            System.out.println(result);
+            for (String sample : result.getFailedSamples()) {
+                System.out.println("  Failed - " + sample);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            fileManager.close();
+        }
+    }
+}
@@ -1,375 +1,760 @@
 /**
  * FileManager.java - Handles file-based storage of BMI records
  * Demonstrates file I/O operations and data persistence
+ *
+ * Users and records live in pluggable UserStore and RecordStore backends
+ * picked by StorageConfig (text files unless configured otherwise). This
+ * class adds locking, statistics summaries, time indexes and reports on top.
+ *
+ * Thread safety: each user's record files are guarded by a striped
+ * read/write lock, so writers of one user never block readers of another.
+ * The user store handles its own concurrency.
  */
 
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.DateTimeException;
 import java.util.ArrayList;
-import java.util.Date;
-import java.text.SimpleDateFormat;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
 
 public class FileManager {
-    private static final String DATA_DIRECTORY = "C:\\yomp";
-    private static final String USER_FILE = "users.txt";
-    private static final String RECORDS_EXTENSION = "_records.txt";
+    private static final String SUMMARY_EXTENSION = "_records.stats";
+    private static final int SUMMARY_MAGIC = 0x424D4953; // "BMIS"
+    private static final int SUMMARY_VERSION = 1;
+    
+    private final File dataDirectory;
+    private final UserStore userStore;
+    private final RecordStore recordStore;
+    
+    // Text histories not yet moved into the configured backend, or null
+    private final RecordStore legacyStore;
+    // Text rows left behind by migrations because their timestamp could not be parsed
+    private final AtomicLong skippedInvalidRecords = new AtomicLong();
+    
+    // Guards each user's records, statistics summary and related files
+    private final StripedLocks recordLocks = new StripedLocks(256);
+    
+    // Latest record of every user; kept current by writers once created
+    private volatile LatestSnapshotTable latestTable;
+    // Same table, published once its initial build has finished
+    private volatile LatestSnapshotTable builtLatestTable;
+    private final Object latestTableLock = new Object();
+    
+    // Parsed histories served by getUserRecords
+    private final RecordCache recordCache;
+    
+    private boolean closed = false;
     
     /**
-     * Constructor - Creates data directory if it doesn't exist
+     * Constructor - Uses the configured data directory and backend
      */
     public FileManager() {
-        File directory = new File(DATA_DIRECTORY);
-        if (!directory.exists()) {
-            if (directory.mkdir()) {
-                System.out.println("Data directory created: " + DATA_DIRECTORY);
-            }
-        }
+        this(StorageConfig.fromEnvironment());
     }
     
     /**
-     * Save or update user information
-     * Format: name|age|gender|createdDate
+     * Constructor - Uses the configured data directory and backend
+     * @param binaryRecords Store records in the binary format whatever backend is configured
      */
-    public boolean saveUser(String name, int age, String gender) {
-        File userFile = new File(DATA_DIRECTORY, USER_FILE);
-        ArrayList<String> users = new ArrayList<>();
-        boolean userExists = false;
-        
-        // Read existing users
-        if (userFile.exists()) {
-            try (BufferedReader reader = new BufferedReader(new FileReader(userFile))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    String[] parts = line.split("\\|");
-                    if (parts.length >= 4 && parts[0].equals(name)) {
-                        // Update existing user
-                        SimpleDateFormat sdf = new SimpleDateFormat("dd/MM/yyyy HH:mm:ss");
-                        line = name + "|" + age + "|" + gender + "|" + parts[3];
-                        userExists = true;
-                    }
-                    users.add(line);
-                }
-            } catch (IOException e) {
-                e.printStackTrace();
-                return false;
+    public FileManager(boolean binaryRecords) {
+        this(binaryRecords ? StorageConfig.fromEnvironment().withBackend(StorageConfig.Backend.BINARY)
+                           : StorageConfig.fromEnvironment());
+    }
+    
+    /**
+     * Constructor - Creates data directory if it doesn't exist
+     */
+    public FileManager(StorageConfig config) {
+        dataDirectory = config.getDataDirectory();
+        if (!dataDirectory.exists()) {
+            if (dataDirectory.mkdirs()) {
+                System.out.println("Data directory created: " + dataDirectory);
             }
         }
+        recordStore = config.createRecordStore();
+        userStore = config.createUserStore(recordStore);
+        legacyStore = config.getBackend().migratesText() ? new TextRecordStore(dataDirectory) : null;
         
-        // Add new user if doesn't exist
-        if (!userExists) {
-            SimpleDateFormat sdf = new SimpleDateFormat("dd/MM/yyyy HH:mm:ss");
-            String newUser = name + "|" + age + "|" + gender + "|" + sdf.format(new Date());
-            users.add(newUser);
+        // In-memory histories are already parsed, so caching them would only double their size
+        recordCache = new RecordCache(config.getBackend() == StorageConfig.Backend.MEMORY
+                                      ? 0 : config.getRecordCacheBytes());
+    }
+    
+    /**
+     * Close the user and record stores, e.g. folding the user journal into
+     * users.txt and saving the kv index, so the next start has nothing to replay
+     * Call once no other thread uses this file manager; later calls do nothing.
+     */
+    public synchronized void close() {
+        if (closed) {
+            return;
         }
-        
-        // Write all users back to file
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(userFile))) {
-            for (String user : users) {
-                writer.write(user);
-                writer.newLine();
-            }
-            System.out.println("User saved successfully: " + name);
-            return true;
-        } catch (IOException e) {
-            e.printStackTrace();
-            return false;
+        closed = true;
+        userStore.close();
+        if (recordStore != userStore) {
+            recordStore.close();
+        }
+        if (legacyStore != null) {
+            legacyStore.close();
         }
     }
     
+    /**
+     * Save or update user information
+     * Format: name|age|gender|createdDate
+     */
+    public boolean saveUser(String name, int age, String gender) {
+        return userStore.saveUser(name, age, gender, Timestamps.format(Timestamps.now()));
+    }
+    
     /**
      * Save BMI record for a user
      * Format: date|weight|height|bmi|category
      */
     public boolean saveBMIRecord(String name, double weight, double height, 
                                   double bmi, String category) {
-        File recordFile = new File(DATA_DIRECTORY, name + RECORDS_EXTENSION);
-        SimpleDateFormat sdf = new SimpleDateFormat("dd/MM/yyyy HH:mm:ss");
-        String timestamp = sdf.format(new Date());
+        ArrayList<BMIRecord> records = new ArrayList<>();
+        records.add(new BMIRecord(Timestamps.now(), weight, height, bmi, category));
+        return appendBMIRecords(name, records);
+    }
+    
+    /**
+     * Append several BMI records for a user with one buffered write
+     * Used by saveBMIRecord and bulk imports
+     */
+    public boolean appendBMIRecords(String name, List<BMIRecord> records) {
+        if (records.isEmpty()) {
+            return true;
+        }
         
-        String record = timestamp + "|" + weight + "|" + height + "|" + bmi + "|" + category;
+        Lock lock = recordLocks.get(name).writeLock();
+        lock.lock();
+        try {
+            return appendRecordsLocked(name, records);
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Append records while holding the user's write lock
+     */
+    private boolean appendRecordsLocked(String name, List<BMIRecord> records) {
+        // Bring any legacy text history along before the first append
+        if (!migrateLocked(name)) {
+            return false;
+        }
         
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(recordFile, true))) {
-            writer.write(record);
-            writer.newLine();
-            System.out.println("BMI record saved for: " + name);
-            return true;
+        // No reader can cache the history again until the write lock is released
+        recordCache.invalidate(name);
+        
+        File recordFile = recordStore.getRecordFile(name);
+        StatisticsAccumulator summary = loadSummary(name, recordFile);
+        
+        try {
+            recordStore.append(name, records);
         } catch (IOException e) {
             e.printStackTrace();
             return false;
         }
+        
+        LatestSnapshotTable table = latestTable;
+        if (table != null) {
+            table.put(name, records.get(records.size() - 1));
+        }
+        
+        // Keep the statistics summary in step with the append
+        if (summary != null) {
+            for (BMIRecord record : records) {
+                summary.add(record.getWeight(), record.getBmi());
+            }
+            saveSummary(name, recordFile, summary);
+        } else {
+            getSummaryFile(name).delete();
+        }
+        return true;
     }
     
     /**
      * Get all records for a specific user
+     * Users not migrated to the configured backend yet are read from their text file.
+     * Recently read histories are served from the record cache.
      */
     public ArrayList<BMIRecord> getUserRecords(String name) {
-        ArrayList<BMIRecord> records = new ArrayList<>();
-        File recordFile = new File(DATA_DIRECTORY, name + RECORDS_EXTENSION);
+        Lock lock = recordLocks.get(name).readLock();
+        lock.lock();
+        try {
+            return readRecordsLocked(name);
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Read all records while holding the user's read lock
+     */
+    private ArrayList<BMIRecord> readRecordsLocked(String name) {
+        ArrayList<BMIRecord> cached = recordCache.get(name);
+        if (cached != null) {
+            return cached;
+        }
         
-        if (!recordFile.exists()) {
-            System.out.println("No records found for user: " + name);
-            return records;
+        RecordStore store = getStore(name);
+        if (!store.exists(name)) {
+            return new ArrayList<>();
         }
         
-        try (BufferedReader reader = new BufferedReader(new FileReader(recordFile))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] parts = line.split("\\|");
-                if (parts.length >= 5) {
-                    BMIRecord record = new BMIRecord(
-                        parts[0], // timestamp
-                        Double.parseDouble(parts[1]), // weight
-                        Double.parseDouble(parts[2]), // height
-                        Double.parseDouble(parts[3]), // bmi
-                        parts[4] // category
-                    );
-                    records.add(record);
-                }
-            }
+        try {
+            ArrayList<BMIRecord> records = store.readRecords(name);
+            recordCache.put(name, records);
+            return records;
         } catch (IOException e) {
             e.printStackTrace();
+            return new ArrayList<>();
         }
-        
-        return records;
     }
     
     /**
-     * Get all user names
+     * Get a user's most recent records, oldest first
+     * Reads backwards from the end of the history, so the cost depends on
+     * the number of records asked for, not on the length of the history
+     * @param count Maximum number of records
      */
-    public ArrayList<String> getAllUsers() {
-        ArrayList<String> users = new ArrayList<>();
-        File userFile = new File(DATA_DIRECTORY, USER_FILE);
-        
-        if (!userFile.exists()) {
-            return users;
+    public ArrayList<BMIRecord> getRecentRecords(String name, int count) {
+        Lock lock = recordLocks.get(name).readLock();
+        lock.lock();
+        try {
+            return getStore(name).readLastRecords(name, count);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return new ArrayList<>();
+        } finally {
+            lock.unlock();
         }
-        
-        try (BufferedReader reader = new BufferedReader(new FileReader(userFile))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] parts = line.split("\\|");
-                if (parts.length >= 1) {
-                    users.add(parts[0]); // Add user name
+    }
+    
+    /**
+     * Open a cursor over a user's records
+     * Reads the same history getUserRecords would; the caller must close it
+     */
+    public RecordCursor openRecordReader(String name) throws IOException {
+        // Opening under the read lock guarantees no half-written row is captured
+        Lock lock = recordLocks.get(name).readLock();
+        lock.lock();
+        try {
+            return getStore(name).openCursor(name);
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Open a cursor whose next() returns the given row first (or false if
+     * there are fewer rows), e.g. to serve one page of a long history
+     * Text files start reading at the time index block holding the row instead
+     * of skipping every row before it. The caller must close the cursor.
+     */
+    public RecordCursor openRecordReader(String name, long firstRow) throws IOException {
+        Lock lock = recordLocks.get(name).readLock();
+        lock.lock();
+        try {
+            RecordStore store = getStore(name);
+            File recordFile = store.getRecordFile(name);
+            if (recordFile != null) {
+                RecordFileReader reader = RecordFileReader.open(recordFile);
+                try {
+                    TimeIndex.open(reader, getIndexFile(name), recordFile.length()).skipTo(reader, firstRow);
+                } catch (RuntimeException e) {
+                    reader.close();
+                    throw e;
+                }
+                return reader;
+            }
+            
+            RecordCursor cursor = store.openCursor(name);
+            long count = cursor.getRecordCount();
+            if (firstRow > 0 && count > 0) {
+                cursor.seek(Math.min(firstRow, count) - 1);
+            }
+            while (cursor.getRowIndex() < firstRow - 1 && cursor.next()) {
+                // Only cursors without a row count get here
+            }
+            return cursor;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Get a user's records with fromMillis <= timestamp < toMillis, in file order
+     * File based backends use the user's sparse time index, so only the blocks
+     * of the history that overlap the range are read.
+     */
+    public ArrayList<BMIRecord> getUserRecordsBetween(String name, long fromMillis, long toMillis) {
+        Lock lock = recordLocks.get(name).readLock();
+        lock.lock();
+        try {
+            RecordStore store = getStore(name);
+            File recordFile = store.getRecordFile(name);
+            if (recordFile != null) {
+                try (RecordFileReader reader = RecordFileReader.open(recordFile)) {
+                    return TimeIndex.query(reader, getIndexFile(name), recordFile.length(), fromMillis, toMillis);
                 }
             }
+            
+            ArrayList<BMIRecord> records = new ArrayList<>();
+            try (RecordCursor cursor = store.openCursor(name)) {
+                while (cursor.next()) {
+                    long time = cursor.getTimestampMillis();
+                    if (time != BMIRecord.INVALID_TIME && time >= fromMillis && time < toMillis) {
+                        records.add(cursor.toRecord());
+                    }
+                }
+            }
+            return records;
         } catch (IOException e) {
             e.printStackTrace();
+            return new ArrayList<>();
+        } finally {
+            lock.unlock();
         }
-        
-        return users;
     }
     
     /**
-     * Get user details
+     * Open a page-at-a-time view of a user's records; the caller must close it
+     * Text files are paged through the user's time index, so only appended
+     * rows are scanned when the view opens.
      */
-    public UserDetails getUserDetails(String name) {
-        File userFile = new File(DATA_DIRECTORY, USER_FILE);
-        
-        if (!userFile.exists()) {
-            return null;
+    public RecordPager openRecordPager(String name) throws IOException {
+        Lock lock = recordLocks.get(name).readLock();
+        lock.lock();
+        try {
+            RecordStore store = getStore(name);
+            File recordFile = store.getRecordFile(name);
+            if (recordFile == null) {
+                return RecordPager.open(store.openCursor(name));
+            }
+            
+            RecordFileReader reader = RecordFileReader.open(recordFile);
+            try {
+                return RecordPager.open(reader, TimeIndex.open(reader, getIndexFile(name), recordFile.length()));
+            } catch (RuntimeException e) {
+                reader.close();
+                throw e;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Get the store currently holding a user's history
+     */
+    private RecordStore getStore(String name) {
+        if (legacyStore != null && !recordStore.exists(name)) {
+            return legacyStore;
+        }
+        return recordStore;
+    }
+    
+    /**
+     * Copy a user's text records into the configured backend
+     * The text file is left in place; the backend's copy takes precedence from then on
+     * @return true if the backend holds the user's history afterwards (or there was none),
+     *         always true when the text backend itself is configured
+     */
+    public boolean migrateRecords(String name) {
+        Lock lock = recordLocks.get(name).writeLock();
+        lock.lock();
+        try {
+            return migrateLocked(name);
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Get number of text rows left out of migrations so far because their
+     * timestamp could not be parsed (the binary and kv formats cannot store them)
+     */
+    public long getSkippedInvalidRecords() {
+        return skippedInvalidRecords.get();
+    }
+    
+    /**
+     * Migrate while holding the user's write lock
+     * Rows with an invalid timestamp are skipped and counted rather than
+     * failing the whole history.
+     */
+    private boolean migrateLocked(String name) {
+        if (legacyStore == null || recordStore.exists(name) || !legacyStore.exists(name)) {
+            return true;
         }
         
-        try (BufferedReader reader = new BufferedReader(new FileReader(userFile))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] parts = line.split("\\|");
-                if (parts.length >= 4 && parts[0].equals(name)) {
-                    return new UserDetails(
-                        parts[0], // name
-                        Integer.parseInt(parts[1]), // age
-                        parts[2], // gender
-                        parts[3] // created date
-                    );
+        try {
+            ArrayList<BMIRecord> records = new ArrayList<>();
+            for (BMIRecord record : legacyStore.readRecords(name)) {
+                if (record.hasValidTimestamp()) {
+                    records.add(record);
+                } else {
+                    skippedInvalidRecords.incrementAndGet();
                 }
             }
+            if (records.isEmpty()) {
+                return true;
+            }
+            recordStore.append(name, records);
+            if (recordStore.countRecords(name) == records.size()) {
+                return true;
+            }
         } catch (IOException e) {
             e.printStackTrace();
         }
-        
-        return null;
+        recordStore.delete(name);
+        return false;
+    }
+    
+    /**
+     * Register a user with their original registration date, e.g. when
+     * moving users between backends
+     */
+    public boolean importUser(UserDetails user) {
+        return userStore.saveUser(user.getName(), user.getAge(), user.getGender(), user.getCreatedAt());
+    }
+    
+    /**
+     * Get the cache behind getUserRecords, e.g. to read its counters
+     */
+    public RecordCache getRecordCache() {
+        return recordCache;
+    }
+    
+    /**
+     * Get the configured record backend, e.g. for migration tools
+     */
+    public RecordStore getRecordStore() {
+        return recordStore;
+    }
+    
+    /**
+     * Get all user names
+     */
+    public ArrayList<String> getAllUsers() {
+        return userStore.getUserNames();
+    }
+    
+    /**
+     * Get user details
+     */
+    public UserDetails getUserDetails(String name) {
+        return userStore.getUser(name);
     }
     
     /**
      * Delete all records for a user
      */
     public boolean deleteUserRecords(String name) {
-        File recordFile = new File(DATA_DIRECTORY, name + RECORDS_EXTENSION);
+        Lock lock = recordLocks.get(name).writeLock();
+        lock.lock();
+        try {
+            return deleteRecordsLocked(name);
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Delete record files while holding the user's write lock
+     */
+    private boolean deleteRecordsLocked(String name) {
+        recordCache.invalidate(name);
+        boolean deleted = recordStore.delete(name);
+        getSummaryFile(name).delete();
+        getIndexFile(name).delete();
+        
+        LatestSnapshotTable table = latestTable;
+        if (table != null) {
+            table.remove(name);
+        }
         
-        if (recordFile.exists()) {
-            if (recordFile.delete()) {
-                System.out.println("All records deleted for: " + name);
-                return true;
-            }
+        if (legacyStore != null && legacyStore.delete(name)) {
+            deleted = true;
         }
-        return false;
+        if (deleted) {
+            System.out.println("All records deleted for: " + name);
+        }
+        return deleted;
     }
     
     /**
      * Delete user from users file
      */
     public boolean deleteUser(String name) {
-        File userFile = new File(DATA_DIRECTORY, USER_FILE);
-        ArrayList<String> users = new ArrayList<>();
-        boolean userFound = false;
-        
-        if (!userFile.exists()) {
+        if (!userStore.deleteUser(name)) {
             return false;
         }
         
-        // Read all users except the one to delete
-        try (BufferedReader reader = new BufferedReader(new FileReader(userFile))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                String[] parts = line.split("\\|");
-                if (parts.length >= 1 && !parts[0].equals(name)) {
-                    users.add(line);
-                } else if (parts[0].equals(name)) {
-                    userFound = true;
-                }
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
-            return false;
-        }
+        // Also delete user's records file
+        deleteUserRecords(name);
         
-        if (!userFound) {
-            return false;
+        System.out.println("User deleted: " + name);
+        return true;
+    }
+    
+    /**
+     * Get the latest record of every user, e.g. for dashboards
+     * The first call builds the table from the last record of each user's
+     * history (only file tails are read); after that it is kept current by
+     * every append and delete, so calls are a memory lookup.
+     */
+    public LatestSnapshotTable getLatestSnapshots() {
+        LatestSnapshotTable table = builtLatestTable;
+        if (table != null) {
+            return table;
         }
         
-        // Write back remaining users
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(userFile))) {
-            for (String user : users) {
-                writer.write(user);
-                writer.newLine();
+        synchronized (latestTableLock) {
+            if (builtLatestTable == null) {
+                // Publish first so appends during the build update the table too
+                LatestSnapshotTable building = new LatestSnapshotTable();
+                latestTable = building;
+                getAllUsers().parallelStream().forEach(name -> loadLatest(building, name));
+                builtLatestTable = building;
+            }
+            return builtLatestTable;
+        }
+    }
+    
+    /**
+     * Get a user's latest record, or null if they have none
+     */
+    public BMIRecord getLatestRecord(String name) {
+        return getLatestSnapshots().get(name);
+    }
+    
+    /**
+     * Read a user's last record into the table
+     * Holding the read lock orders this with the user's appends and deletes
+     */
+    private void loadLatest(LatestSnapshotTable table, String name) {
+        Lock lock = recordLocks.get(name).readLock();
+        lock.lock();
+        try {
+            ArrayList<BMIRecord> last = getStore(name).readLastRecords(name, 1);
+            if (!last.isEmpty()) {
+                table.put(name, last.get(0));
             }
-            
-            // Also delete user's records file
-            deleteUserRecords(name);
-            
-            System.out.println("User deleted: " + name);
-            return true;
         } catch (IOException e) {
             e.printStackTrace();
-            return false;
+        } finally {
+            lock.unlock();
         }
     }
     
     /**
      * Get statistics for a user
+     * Served from the summary sidecar; a missing or stale summary is rebuilt
+     * in one pass over the records without building a record list
      */
     public BMIStatistics getUserStatistics(String name) {
-        ArrayList<BMIRecord> records = getUserRecords(name);
-        
-        if (records.isEmpty()) {
+        Lock lock = recordLocks.get(name).readLock();
+        lock.lock();
+        try {
+            RecordStore store = getStore(name);
+            File recordFile = store.getRecordFile(name);
+            StatisticsAccumulator summary = loadSummary(name, recordFile);
+            if (summary != null) {
+                return summary.toStatistics();
+            }
+            
+            StatisticsAccumulator accumulator = new StatisticsAccumulator();
+            try (RecordCursor cursor = store.openCursor(name)) {
+                while (cursor.next()) {
+                    accumulator.add(cursor.getWeight(), cursor.getBmi());
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+                return null;
+            }
+            
+            // No writer can append while we hold the read lock, so the summary is current
+            if (recordFile != null) {
+                saveSummary(name, recordFile, accumulator);
+            }
+            return accumulator.toStatistics();
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Drop a user's statistics summary so the next request rebuilds it from the records
+     */
+    public void forgetStatistics(String name) {
+        Lock lock = recordLocks.get(name).writeLock();
+        lock.lock();
+        try {
+            getSummaryFile(name).delete();
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Get the time index sidecar of a user
+     */
+    private File getIndexFile(String name) {
+        return new File(dataDirectory, name + TimeIndex.INDEX_EXTENSION);
+    }
+    
+    /**
+     * Get the statistics summary sidecar of a user
+     */
+    private File getSummaryFile(String name) {
+        return new File(dataDirectory, name + SUMMARY_EXTENSION);
+    }
+    
+    /**
+     * Load a user's statistics summary if it matches the records file
+     * Format: magic|version|records file length|accumulator state
+     * @param recordFile Records file of the user, or null for backends without one
+     * @return the summary, an empty one if there are no records yet, or null if missing or stale
+     */
+    private StatisticsAccumulator loadSummary(String name, File recordFile) {
+        if (recordFile == null) {
             return null;
         }
+        if (recordFile.length() == 0) {
+            return new StatisticsAccumulator();
+        }
         
-        double totalBMI = 0;
-        double minBMI = Double.MAX_VALUE;
-        double maxBMI = Double.MIN_VALUE;
-        double minWeight = Double.MAX_VALUE;
-        double maxWeight = Double.MIN_VALUE;
+        File summaryFile = getSummaryFile(name);
+        if (!summaryFile.exists()) {
+            return null;
+        }
         
-        for (BMIRecord record : records) {
-            totalBMI += record.getBmi();
-            minBMI = Math.min(minBMI, record.getBmi());
-            maxBMI = Math.max(maxBMI, record.getBmi());
-            minWeight = Math.min(minWeight, record.getWeight());
-            maxWeight = Math.max(maxWeight, record.getWeight());
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(summaryFile)))) {
+            if (in.readInt() != SUMMARY_MAGIC || in.readInt() != SUMMARY_VERSION) {
+                return null;
+            }
+            if (in.readLong() != recordFile.length()) {
+                return null;
+            }
+            return StatisticsAccumulator.readFrom(in);
+        } catch (IOException e) {
+            // Unreadable summaries are simply rebuilt
+            return null;
+        }
+    }
+    
+    /**
+     * Atomically replace a user's statistics summary (write temp, then rename)
+     * Concurrent readers may rebuild the same summary, so each uses its own temp file
+     */
+    private void saveSummary(String name, File recordFile, StatisticsAccumulator summary) {
+        File summaryFile = getSummaryFile(name);
+        File tempFile;
+        try {
+            tempFile = File.createTempFile(name + SUMMARY_EXTENSION + "_", ".tmp", dataDirectory);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
         }
         
-        double avgBMI = totalBMI / records.size();
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            out.writeInt(SUMMARY_MAGIC);
+            out.writeInt(SUMMARY_VERSION);
+            out.writeLong(recordFile.length());
+            summary.writeTo(out);
+        } catch (IOException e) {
+            e.printStackTrace();
+            tempFile.delete();
+            summaryFile.delete();
+            return;
+        }
         
-        return new BMIStatistics(
-            records.size(),
-            avgBMI,
-            minBMI,
-            maxBMI,
-            minWeight,
-            maxWeight
-        );
+        try {
+            Files.move(tempFile.toPath(), summaryFile.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            e.printStackTrace();
+            tempFile.delete();
+            summaryFile.delete();
+        }
     }
     
     /**
-     * Export user data to a formatted text file
+     * Export user data to a report file, formatted by its extension
+     * (.csv or .json, anything else as text)
      */
     public boolean exportUserData(String name, String exportFileName) {
+        return exportUserData(name, exportFileName, ReportWriter.Format.forFileName(exportFileName));
+    }
+    
+    /**
+     * Get the report file name of a user, e.g. John_Doe_1a2b3c4d_Report.txt
+     * Used by both the GUI and bulk exports. The hash of the raw name keeps
+     * "John Doe" and "John_Doe" (or names that differ only in case or in
+     * non-Latin letters) from overwriting each other's reports.
+     */
+    public static String getReportFileName(String name, ReportWriter.Format format) {
+        return name.replaceAll("[^a-zA-Z0-9]", "_") + String.format("_%08x", name.hashCode()) +
+               "_Report" + format.getExtension();
+    }
+    
+    /**
+     * Export user data to a report file in the given format
+     * Statistics come from the persisted summary, so the records are streamed
+     * into the report in a single pass without being held in memory.
+     * The report is written to a temporary file and renamed into place, so an
+     * existing report is never left half-overwritten.
+     */
+    public boolean exportUserData(String name, String exportFileName, ReportWriter.Format format) {
         UserDetails user = getUserDetails(name);
-        ArrayList<BMIRecord> records = getUserRecords(name);
-        BMIStatistics stats = getUserStatistics(name);
         
-        if (user == null || records.isEmpty()) {
+        if (user == null) {
             return false;
         }
         
-        File exportFile = new File(DATA_DIRECTORY, exportFileName);
-        
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(exportFile))) {
-            writer.write("================================================");
-            writer.newLine();
-            writer.write("        BMI TRACKER - USER REPORT");
-            writer.newLine();
-            writer.write("================================================");
-            writer.newLine();
-            writer.newLine();
-            
-            writer.write("User Information:");
-            writer.newLine();
-            writer.write("  Name: " + user.getName());
-            writer.newLine();
-            writer.write("  Age: " + user.getAge());
-            writer.newLine();
-            writer.write("  Gender: " + user.getGender());
-            writer.newLine();
-            writer.write("  Member Since: " + user.getCreatedAt());
-            writer.newLine();
-            writer.newLine();
-            
-            if (stats != null) {
-                writer.write("Statistics:");
-                writer.newLine();
-                writer.write("  Total Records: " + stats.getTotalRecords());
-                writer.newLine();
-                writer.write("  Average BMI: " + String.format("%.2f", stats.getAvgBMI()));
-                writer.newLine();
-                writer.write("  BMI Range: " + String.format("%.2f - %.2f", stats.getMinBMI(), stats.getMaxBMI()));
-                writer.newLine();
-                writer.write("  Weight Range: " + String.format("%.1f - %.1f kg", stats.getMinWeight(), stats.getMaxWeight()));
-                writer.newLine();
-                writer.newLine();
+        // Hold the read lock so the statistics and the streamed records match
+        Lock lock = recordLocks.get(name).readLock();
+        lock.lock();
+        try {
+            BMIStatistics stats = getUserStatistics(name);
+            if (stats == null) {
+                return false;
             }
             
-            writer.write("BMI Records History:");
-            writer.newLine();
-            writer.write("------------------------------------------------");
-            writer.newLine();
-            
-            int count = 1;
-            for (BMIRecord record : records) {
-                writer.write("Record #" + count++);
-                writer.newLine();
-                writer.write("  Date: " + record.getTimestamp());
-                writer.newLine();
-                writer.write("  Weight: " + record.getWeight() + " kg");
-                writer.newLine();
-                writer.write("  Height: " + record.getHeight() + " cm");
-                writer.newLine();
-                writer.write("  BMI: " + String.format("%.2f", record.getBmi()));
-                writer.newLine();
-                writer.write("  Category: " + record.getCategory());
-                writer.newLine();
-                writer.write("------------------------------------------------");
-                writer.newLine();
+            File exportFile = new File(dataDirectory, exportFileName);
+            File tempFile = File.createTempFile(exportFileName + "_", ".tmp", dataDirectory);
+            try {
+                try (RecordCursor reader = getStore(name).openCursor(name);
+                     ReportWriter report = ReportWriter.open(tempFile, format)) {
+                    report.writeHeader(user, stats);
+                    while (reader.next()) {
+                        report.writeRecord(reader);
+                    }
+                    report.writeFooter();
+                }
+                Files.move(tempFile.toPath(), exportFile.toPath(),
+                           StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                tempFile.delete();
             }
             
-            writer.write("\nReport generated on: " + new SimpleDateFormat("dd/MM/yyyy HH:mm:ss").format(new Date()));
-            writer.newLine();
-            
             System.out.println("Data exported successfully to: " + exportFileName);
             return true;
             
         } catch (IOException e) {
             e.printStackTrace();
             return false;
+        } finally {
+            lock.unlock();
         }
     }
     
@@ -377,28 +762,56 @@ public class FileManager {
      * Get the data directory path
      */
     public String getDataDirectory() {
-        return new File(DATA_DIRECTORY).getAbsolutePath();
+        return dataDirectory.getAbsolutePath();
     }
     
     // Inner class for BMI Record
     public static class BMIRecord {
-        private String timestamp;
+        // Marks a legacy timestamp that could not be parsed; its text is kept as-is
+        public static final long INVALID_TIME = Long.MIN_VALUE;
+        
+        private long timestampMillis;
+        private String timestamp; // formatted on first use
         private double weight;
         private double height;
         private double bmi;
         private String category;
         
-        public BMIRecord(String timestamp, double weight, double height, 
+        public BMIRecord(long timestampMillis, double weight, double height, 
                         double bmi, String category) {
-            this.timestamp = timestamp;
+            this.timestampMillis = timestampMillis;
             this.weight = weight;
             this.height = height;
             this.bmi = bmi;
             this.category = category;
         }
         
+        /**
+         * Create a record from a dd/MM/yyyy HH:mm:ss timestamp, as stored in text files
+         */
+        public BMIRecord(String timestamp, double weight, double height, 
+                        double bmi, String category) {
+            this(parseTimestamp(timestamp), weight, height, bmi, category);
+            this.timestamp = timestamp;
+        }
+        
+        private static long parseTimestamp(String timestamp) {
+            try {
+                return Timestamps.parse(timestamp);
+            } catch (DateTimeException e) {
+                return INVALID_TIME;
+            }
+        }
+        
         // Getters
-        public String getTimestamp() { return timestamp; }
+        public long getTimestampMillis() { return timestampMillis; }
+        public boolean hasValidTimestamp() { return timestampMillis != INVALID_TIME; }
+        public String getTimestamp() {
+            if (timestamp == null) {
+                timestamp = Timestamps.format(timestampMillis);
+            }
+            return timestamp;
+        }
         public double getWeight() { return weight; }
         public double getHeight() { return height; }
         public double getBmi() { return bmi; }
@@ -407,7 +820,7 @@ public class FileManager {
         @Override
         public String toString() {
             return String.format("[%s] Weight: %.1f kg, Height: %.1f cm, BMI: %.2f (%s)",
-                    timestamp, weight, height, bmi, category);
+                    getTimestamp(), weight, height, bmi, category);
         }
     }
     
@@ -446,15 +859,35 @@ public class FileManager {
         private double maxBMI;
         private double minWeight;
         private double maxWeight;
+        private double stdDevBMI;
+        private double medianBMI;
+        private double firstBMI;
+        private double lastBMI;
+        private double firstWeight;
+        private double lastWeight;
         
         public BMIStatistics(int totalRecords, double avgBMI, double minBMI, 
                            double maxBMI, double minWeight, double maxWeight) {
+            this(totalRecords, avgBMI, minBMI, maxBMI, minWeight, maxWeight,
+                 Double.NaN, Double.NaN, Double.NaN, Double.NaN, Double.NaN, Double.NaN);
+        }
+        
+        public BMIStatistics(int totalRecords, double avgBMI, double minBMI, 
+                           double maxBMI, double minWeight, double maxWeight,
+                           double stdDevBMI, double medianBMI, double firstBMI,
+                           double lastBMI, double firstWeight, double lastWeight) {
             this.totalRecords = totalRecords;
             this.avgBMI = avgBMI;
             this.minBMI = minBMI;
             this.maxBMI = maxBMI;
             this.minWeight = minWeight;
             this.maxWeight = maxWeight;
+            this.stdDevBMI = stdDevBMI;
+            this.medianBMI = medianBMI;
+            this.firstBMI = firstBMI;
+            this.lastBMI = lastBMI;
+            this.firstWeight = firstWeight;
+            this.lastWeight = lastWeight;
         }
         
         // Getters
@@ -464,12 +897,24 @@ public class FileManager {
         public double getMaxBMI() { return maxBMI; }
         public double getMinWeight() { return minWeight; }
         public double getMaxWeight() { return maxWeight; }
+        public double getStdDevBMI() { return stdDevBMI; }
+        public double getMedianBMI() { return medianBMI; }
+        public double getFirstBMI() { return firstBMI; }
+        public double getLastBMI() { return lastBMI; }
+        public double getFirstWeight() { return firstWeight; }
+        public double getLastWeight() { return lastWeight; }
         
         @Override
         public String toString() {
-            return String.format("Total Records: %d\nAverage BMI: %.2f\n" +
+            String text = String.format("Total Records: %d\nAverage BMI: %.2f\n" +
                                "BMI Range: %.2f - %.2f\nWeight Range: %.1f - %.1f kg",
                                totalRecords, avgBMI, minBMI, maxBMI, minWeight, maxWeight);
+            if (!Double.isNaN(medianBMI)) {
+                text += String.format("\nMedian BMI: %.2f\nBMI Std Deviation: %.2f\n" +
+                               "BMI Change: %.2f -> %.2f\nWeight Change: %.1f -> %.1f kg",
+                               medianBMI, stdDevBMI, firstBMI, lastBMI, firstWeight, lastWeight);
+            }
+            return text;
         }
     }
-}
\ No newline at end of file
+}
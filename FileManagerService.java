@@ -0,0 +1,201 @@
+/**
+ * FileManagerService.java - Asynchronous wrapper around FileManager
+ * Runs all file I/O on background threads so the Swing event thread never
+ * touches the disk. Repeated identical requests share one in-flight task,
+ * and progress is reported back on the event thread.
+ *
+ * Reads can be cancelled, which interrupts them. Writes (saves, deletes and
+ * exports) cannot: once submitted they always run to completion, so a save
+ * or delete is never cut off halfway by the cancel button or by shutdown.
+ */
+
+import javax.swing.SwingUtilities;
+import java.util.ArrayList;
+import java.util.concurrent.*;
+import java.util.function.IntConsumer;
+
+public class FileManagerService {
+    private final FileManager fileManager;
+    private final ExecutorService executor;
+
+    // Running tasks by key, used to coalesce repeated requests
+    private final ConcurrentHashMap<String, CompletableFuture<?>> inFlight = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<CompletableFuture<?>, Boolean> active = new ConcurrentHashMap<>();
+
+    private volatile IntConsumer progressListener;
+
+    /**
+     * Constructor
+     * @param fileManager File manager doing the actual I/O
+     */
+    public FileManagerService(FileManager fileManager) {
+        this.fileManager = fileManager;
+        this.executor = Executors.newFixedThreadPool(2, r -> {
+            Thread thread = new Thread(r, "file-manager-worker");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Listen for changes in the number of running tasks (called on the event thread)
+     */
+    public void setProgressListener(IntConsumer listener) {
+        this.progressListener = listener;
+    }
+
+    /**
+     * Get number of tasks that have not finished yet
+     */
+    public int getActiveTaskCount() {
+        return active.size();
+    }
+
+    /**
+     * Cancel every running read; writes are left to finish
+     */
+    public void cancelAll() {
+        for (CompletableFuture<?> future : active.keySet()) {
+            future.cancel(true);
+        }
+    }
+
+    public CompletableFuture<ArrayList<String>> getAllUsers() {
+        return submit("users", fileManager::getAllUsers);
+    }
+
+    public CompletableFuture<FileManager.UserDetails> getUserDetails(String name) {
+        return submit("user:" + name, () -> fileManager.getUserDetails(name));
+    }
+
+    public CompletableFuture<ArrayList<FileManager.BMIRecord>> getUserRecords(String name) {
+        return submit("records:" + name, () -> fileManager.getUserRecords(name));
+    }
+
+    public CompletableFuture<ArrayList<FileManager.BMIRecord>> getRecentRecords(String name, int count) {
+        return submit("recent:" + name + ":" + count, () -> fileManager.getRecentRecords(name, count));
+    }
+
+    public CompletableFuture<ArrayList<FileManager.BMIRecord>> getUserRecordsBetween(String name, long fromMillis,
+                                                                                long toMillis) {
+        return submit("records:" + name + ":" + fromMillis + "-" + toMillis,
+                      () -> fileManager.getUserRecordsBetween(name, fromMillis, toMillis));
+    }
+
+    /**
+     * Open and index a user's records for paged viewing (never shared between callers)
+     */
+    public CompletableFuture<RecordPager> openRecordPager(String name) {
+        return submit(null, () -> fileManager.openRecordPager(name));
+    }
+
+    public CompletableFuture<FileManager.BMIStatistics> getUserStatistics(String name) {
+        return submit("stats:" + name, () -> fileManager.getUserStatistics(name));
+    }
+
+    public CompletableFuture<Boolean> exportUserData(String name, String exportFileName) {
+        return submitWrite("export:" + exportFileName, () -> fileManager.exportUserData(name, exportFileName));
+    }
+
+    /**
+     * Save (or update) the user and append a BMI record
+     */
+    public CompletableFuture<Boolean> saveBMIRecord(String name, int age, String gender, double weight,
+                                                    double height, double bmi, String category) {
+        return submitWrite(null, () -> fileManager.saveUser(name, age, gender) &&
+                                       fileManager.saveBMIRecord(name, weight, height, bmi, category));
+    }
+
+    public CompletableFuture<Boolean> deleteUserRecords(String name) {
+        return submitWrite("delete-records:" + name, () -> fileManager.deleteUserRecords(name));
+    }
+
+    public CompletableFuture<Boolean> deleteUser(String name) {
+        return submitWrite("delete-user:" + name, () -> fileManager.deleteUser(name));
+    }
+
+    /**
+     * Run a read in the background; cancelling it interrupts the task
+     * @param key Requests with the same key share one running task; null never coalesces
+     */
+    public <T> CompletableFuture<T> submit(String key, Callable<T> task) {
+        return submit(key, task, new CompletableFuture<>());
+    }
+
+    /**
+     * Run a write in the background; it cannot be cancelled
+     * @param key Requests with the same key share one running task; null never coalesces
+     */
+    public <T> CompletableFuture<T> submitWrite(String key, Callable<T> task) {
+        return submit(key, task, new WriteFuture<>());
+    }
+
+    /**
+     * Result of a write; cancel() is refused so the write always finishes
+     */
+    private static class WriteFuture<T> extends CompletableFuture<T> {
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            return false;
+        }
+    }
+
+    private <T> CompletableFuture<T> submit(String key, Callable<T> task, CompletableFuture<T> result) {
+        while (key != null) {
+            @SuppressWarnings("unchecked")
+            CompletableFuture<T> running = (CompletableFuture<T>) inFlight.putIfAbsent(key, result);
+            if (running == null) {
+                break;
+            }
+            if (!running.isDone()) {
+                return running;
+            }
+            inFlight.remove(key, running);
+        }
+        active.put(result, Boolean.TRUE);
+        fireProgress();
+
+        Future<?> work = executor.submit(() -> {
+            try {
+                result.complete(task.call());
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+            }
+        });
+
+        result.whenComplete((value, error) -> {
+            if (result.isCancelled()) {
+                work.cancel(true);
+            }
+            if (key != null) {
+                inFlight.remove(key, result);
+            }
+            active.remove(result);
+            fireProgress();
+        });
+        return result;
+    }
+
+    /**
+     * Stop the worker threads once pending writes have finished
+     */
+    public void shutdown() {
+        cancelAll();
+        executor.shutdown();
+    }
+
+    /**
+     * Wait for the worker threads to stop after shutdown
+     * @return true if every task finished within the timeout
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return executor.awaitTermination(timeout, unit);
+    }
+
+    private void fireProgress() {
+        IntConsumer listener = progressListener;
+        if (listener != null) {
+            SwingUtilities.invokeLater(() -> listener.accept(active.size()));
+        }
+    }
+}
@@ -4,8 +4,6 @@
  */
 
 import java.util.ArrayList;
-import java.util.Date;
-import java.text.SimpleDateFormat;
 
 public class HealthRecord {
     private String name;
@@ -15,14 +13,14 @@ public class HealthRecord {
      * Inner class to represent a single health record entry
      */
     public static class RecordEntry {
-        private Date date;
+        private long timestamp; // epoch millis
         private double weight;
         private double height;
         private double bmi;
         private String category;
         
         public RecordEntry(double weight, double height, double bmi, String category) {
-            this.date = new Date();
+            this.timestamp = Timestamps.now();
             this.weight = weight;
             this.height = height;
             this.bmi = bmi;
@@ -30,10 +28,12 @@ public class HealthRecord {
         }
         
         public String getFormattedDate() {
-            SimpleDateFormat sdf = new SimpleDateFormat("dd/MM/yyyy HH:mm");
-            return sdf.format(date);
+            // dd/MM/yyyy HH:mm, i.e. the shared format without seconds
+            return Timestamps.format(timestamp).substring(0, 16);
         }
         
+        public long getTimestamp() { return timestamp; }
+        
         public double getWeight() { return weight; }
         public double getHeight() { return height; }
         public double getBMI() { return bmi; }
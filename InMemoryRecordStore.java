@@ -0,0 +1,149 @@
+/**
+ * InMemoryRecordStore.java - Volatile storage of BMI records on the heap
+ * Nothing is written to disk, so histories are lost when the process exits.
+ * Useful for tests, demos and benchmarks that should not touch the data directory.
+ *
+ * Each history is an array that only ever grows at the end. A cursor keeps
+ * the array and row count it was opened with, so it sees a stable snapshot
+ * while later appends fill slots beyond it or move to a bigger array.
+ */
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class InMemoryRecordStore implements RecordStore {
+    private final ConcurrentHashMap<String, History> histories = new ConcurrentHashMap<>();
+
+    /**
+     * One user's records; replaced as a whole on every append
+     */
+    private static class History {
+        final FileManager.BMIRecord[] records;
+        final int count;
+
+        History(FileManager.BMIRecord[] records, int count) {
+            this.records = records;
+            this.count = count;
+        }
+    }
+
+    @Override
+    public boolean exists(String name) {
+        return histories.containsKey(name);
+    }
+
+    @Override
+    public void append(String name, List<FileManager.BMIRecord> records) {
+        History history = histories.get(name);
+        FileManager.BMIRecord[] array = history != null ? history.records : new FileManager.BMIRecord[16];
+        int count = history != null ? history.count : 0;
+        if (count + records.size() > array.length) {
+            array = Arrays.copyOf(array, Math.max(array.length * 2, count + records.size()));
+        }
+        for (FileManager.BMIRecord record : records) {
+            array[count++] = record;
+        }
+        histories.put(name, new History(array, count));
+    }
+
+    @Override
+    public ArrayList<FileManager.BMIRecord> readRecords(String name) {
+        History history = histories.get(name);
+        if (history == null) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(Arrays.asList(history.records).subList(0, history.count));
+    }
+
+    @Override
+    public RecordCursor openCursor(String name) {
+        History history = histories.get(name);
+        return history != null ? new Cursor(history.records, history.count) : new Cursor(null, 0);
+    }
+
+    @Override
+    public ArrayList<FileManager.BMIRecord> readLastRecords(String name, int count) {
+        History history = histories.get(name);
+        if (history == null) {
+            return new ArrayList<>();
+        }
+        int from = Math.max(0, history.count - Math.max(count, 0));
+        return new ArrayList<>(Arrays.asList(history.records).subList(from, history.count));
+    }
+
+    @Override
+    public long countRecords(String name) {
+        History history = histories.get(name);
+        return history != null ? history.count : 0;
+    }
+
+    @Override
+    public boolean delete(String name) {
+        return histories.remove(name) != null;
+    }
+
+    @Override
+    public File getRecordFile(String name) {
+        return null;
+    }
+
+    /**
+     * Cursor over a snapshot of one history
+     */
+    private static class Cursor implements RecordCursor {
+        private final FileManager.BMIRecord[] records;
+        private final int count;
+        private int row = -1;
+
+        Cursor(FileManager.BMIRecord[] records, int count) {
+            this.records = records;
+            this.count = count;
+        }
+
+        @Override
+        public boolean next() {
+            if (row + 1 >= count) {
+                return false;
+            }
+            row++;
+            return true;
+        }
+
+        @Override
+        public long getRowIndex() {
+            return row;
+        }
+
+        @Override
+        public long getRecordCount() {
+            return count;
+        }
+
+        @Override
+        public void seek(long index) {
+            if (index < 0 || index >= count) {
+                throw new IndexOutOfBoundsException("Record " + index + " of " + count);
+            }
+            row = (int) index;
+        }
+
+        @Override public long getTimestampMillis() { return records[row].getTimestampMillis(); }
+        @Override public String getTimestamp() { return records[row].getTimestamp(); }
+        @Override public double getWeight() { return records[row].getWeight(); }
+        @Override public double getHeight() { return records[row].getHeight(); }
+        @Override public double getBmi() { return records[row].getBmi(); }
+        @Override public String getCategory() { return records[row].getCategory(); }
+
+        @Override
+        public FileManager.BMIRecord toRecord() {
+            return records[row];
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,44 @@
+/**
+ * InMemoryUserStore.java - Volatile user registry on the heap
+ * Pairs with InMemoryRecordStore; nothing survives the process.
+ */
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+
+public class InMemoryUserStore implements UserStore {
+    // Insertion order is registration order
+    private final LinkedHashMap<String, FileManager.UserDetails> users = new LinkedHashMap<>();
+
+    @Override
+    public synchronized FileManager.UserDetails getUser(String name) {
+        return users.get(name);
+    }
+
+    @Override
+    public synchronized ArrayList<String> getUserNames() {
+        return new ArrayList<>(users.keySet());
+    }
+
+    @Override
+    public synchronized int size() {
+        return users.size();
+    }
+
+    @Override
+    public synchronized boolean saveUser(String name, int age, String gender, String createdAt) {
+        FileManager.UserDetails existing = users.get(name);
+        String since = existing != null ? existing.getCreatedAt() : createdAt;
+        users.put(name, new FileManager.UserDetails(name, age, gender, since));
+        return true;
+    }
+
+    @Override
+    public synchronized boolean deleteUser(String name) {
+        return users.remove(name) != null;
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,988 @@
+/**
+ * KeyValueStore.java - Single-file embedded store for users and records
+ * Everything lives in one append-only log (bmi.kv) in the data directory
+ * instead of a file per user. Each entry is length-prefixed and checksummed:
+ *   headLength|rowCount|head|rows|crc32
+ * where the head holds the entry type, the user name and:
+ *   USER            age, gender, registration date
+ *   DELETE_USER     -
+ *   RECORDS         offset of the user's previous RECORDS entry, or -1
+ *   DELETE_RECORDS  -
+ * RECORDS rows use the fixed-width BinaryRecordStore row layout. Following
+ * the back-pointers from a user's newest batch finds their whole history
+ * without scanning the log.
+ *
+ * Memory is bounded by the number of users, not records: the index holds
+ * each user's details and the offset, row count and size of their newest
+ * batch. It is saved to bmi.kv.index every few MB of log, so opening only
+ * replays what was written since. A torn entry at the end of the log (a
+ * crash mid-write) fails its checksum on replay and is cut off.
+ *
+ * When more than half the log is dead entries, or histories are spread over
+ * many small batches, opening rewrites the log with one entry per user so
+ * scans read each history sequentially.
+ *
+ * Thread safety: writes and index lookups synchronize on the store; rows are
+ * read with positional reads outside the lock. Entries are never changed
+ * once written, so a cursor sees the history as it was when opened. Only one
+ * store at a time may have the log open; it holds a file lock until closed.
+ * Interrupting a thread in the middle of I/O closes the shared channel for
+ * everyone; the store then reopens it, takes the lock again and retries, so
+ * reads and writes complete and the interrupt is left for the caller to see.
+ */
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+
+public class KeyValueStore implements RecordStore, UserStore {
+    public static final String LOG_FILE = "bmi.kv";
+    public static final String INDEX_EXTENSION = ".index";
+
+    private static final int MAGIC = 0x424D494B; // "BMIK"
+    private static final int INDEX_MAGIC = 0x424D4B49; // "BMKI"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16; // magic, version, generation
+
+    private static final byte USER = 1;
+    private static final byte DELETE_USER = 2;
+    private static final byte RECORDS = 3;
+    private static final byte DELETE_RECORDS = 4;
+
+    private static final int ROW_SIZE = BinaryRecordStore.RECORD_SIZE;
+    private static final int ROWS_PER_CHUNK = 2048;
+    private static final int ENTRY_OVERHEAD = 4 + 4 + 4; // headLength, rowCount, crc
+
+    private static final long INDEX_INTERVAL = 16L * 1024 * 1024;
+    private static final int MAX_BATCHES_PER_HISTORY = 64;
+
+    private final File logFile;
+    private final File indexFile;
+    private volatile FileChannel channel;
+    private volatile boolean closed = false;
+    private long generation;
+    private long end;
+    private long indexedEnd;
+    private long garbageBytes;
+    private long batchCount;
+
+    private final LinkedHashMap<String, FileManager.UserDetails> users = new LinkedHashMap<>();
+    private final LinkedHashMap<String, History> histories = new LinkedHashMap<>();
+
+    /**
+     * Newest batch of a user's history plus totals over the whole chain
+     */
+    private static class History {
+        long head;
+        long count;
+        int batches;
+        long bytes;
+    }
+
+    /**
+     * Constructor - Opens (or creates) the store, compacting it if needed
+     * @param directory Directory holding bmi.kv and its index
+     */
+    public KeyValueStore(File directory) throws IOException {
+        logFile = new File(directory, LOG_FILE);
+        indexFile = new File(directory, LOG_FILE + INDEX_EXTENSION);
+        open();
+        if (needsCompaction()) {
+            compact();
+        }
+    }
+
+    @Override
+    public synchronized FileManager.UserDetails getUser(String name) {
+        return users.get(name);
+    }
+
+    @Override
+    public synchronized ArrayList<String> getUserNames() {
+        return new ArrayList<>(users.keySet());
+    }
+
+    @Override
+    public synchronized int size() {
+        return users.size();
+    }
+
+    @Override
+    public synchronized boolean saveUser(String name, int age, String gender, String createdAt) {
+        FileManager.UserDetails existing = users.get(name);
+        String since = existing != null ? existing.getCreatedAt() : createdAt;
+        FileManager.UserDetails user = new FileManager.UserDetails(name, age, gender, since);
+        try {
+            writeEntry(userHead(user));
+            if (existing != null) {
+                garbageBytes += ENTRY_OVERHEAD + userHead(existing).length;
+            }
+            users.put(name, user);
+            indexIfDue();
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    @Override
+    public synchronized boolean deleteUser(String name) {
+        FileManager.UserDetails existing = users.get(name);
+        if (existing == null) {
+            return false;
+        }
+        try {
+            long size = writeEntry(head(DELETE_USER, name, -1));
+            garbageBytes += size + ENTRY_OVERHEAD + userHead(existing).length;
+            users.remove(name);
+            indexIfDue();
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Save the index and close the log
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        try {
+            saveIndex();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        closed = true;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public synchronized boolean exists(String name) {
+        return histories.containsKey(name);
+    }
+
+    /**
+     * Append records as one batch linked to the user's previous batch
+     */
+    @Override
+    public synchronized void append(String name, List<FileManager.BMIRecord> records) throws IOException {
+        if (records.isEmpty()) {
+            return;
+        }
+        History history = histories.get(name);
+        long offset = end;
+        EntryWriter writer = new EntryWriter(this::write, offset,
+                                             head(RECORDS, name, history != null ? history.head : -1), records.size());
+        try {
+            for (FileManager.BMIRecord record : records) {
+                writer.room(ROW_SIZE)
+                      .putLong(BinaryRecordStore.checkTimestamp(record))
+                      .putDouble(record.getWeight())
+                      .putDouble(record.getHeight())
+                      .putDouble(record.getBmi())
+                      .put(BinaryRecordStore.toCategoryCode(record.getCategory()));
+            }
+            end = writer.finish();
+        } catch (IOException e) {
+            truncate(offset);
+            throw e;
+        }
+
+        if (history == null) {
+            history = new History();
+            histories.put(name, history);
+        }
+        addBatch(history, offset, records.size(), end - offset);
+        indexIfDue();
+    }
+
+    @Override
+    public ArrayList<FileManager.BMIRecord> readRecords(String name) throws IOException {
+        ArrayList<FileManager.BMIRecord> records = new ArrayList<>();
+        try (RecordCursor cursor = openCursor(name)) {
+            while (cursor.next()) {
+                records.add(cursor.toRecord());
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return records;
+    }
+
+    /**
+     * Open a cursor over the user's history as it is now
+     */
+    @Override
+    public RecordCursor openCursor(String name) throws IOException {
+        long head;
+        int batches;
+        synchronized (this) {
+            History history = histories.get(name);
+            if (history == null) {
+                return new Cursor(new long[0], new long[] {0});
+            }
+            head = history.head;
+            batches = history.batches;
+        }
+
+        // Entries below the head never change, so the chain is walked without the lock
+        long[] offsets = new long[batches];
+        long[] counts = new long[batches];
+        long offset = head;
+        ByteBuffer header = ByteBuffer.allocate(8);
+        for (int batch = batches - 1; batch >= 0; batch--) {
+            header.clear();
+            read(header, offset);
+            int headLength = header.getInt(0);
+            ByteBuffer headBytes = ByteBuffer.allocate(headLength);
+            read(headBytes, offset + 8);
+            offsets[batch] = offset + 8 + headLength;
+            counts[batch] = header.getInt(4);
+            offset = readPrevious(headBytes.array());
+        }
+
+        long[] starts = new long[batches + 1];
+        for (int batch = 0; batch < batches; batch++) {
+            starts[batch + 1] = starts[batch] + counts[batch];
+        }
+        return new Cursor(offsets, starts);
+    }
+
+    /**
+     * Read the last rows of a user's history, walking the batch chain back
+     * from the newest batch only as far as needed
+     */
+    @Override
+    public ArrayList<FileManager.BMIRecord> readLastRecords(String name, int count) throws IOException {
+        long offset;
+        int rows;
+        synchronized (this) {
+            History history = histories.get(name);
+            if (history == null) {
+                return new ArrayList<>();
+            }
+            offset = history.head;
+            rows = (int) Math.min(Math.max(count, 0), history.count);
+        }
+
+        // Entries below the head never change, so the chain is walked without the lock
+        FileManager.BMIRecord[] records = new FileManager.BMIRecord[rows];
+        int left = rows;
+        ByteBuffer header = ByteBuffer.allocate(8);
+        while (left > 0) {
+            header.clear();
+            read(header, offset);
+            int headLength = header.getInt(0);
+            int batchRows = header.getInt(4);
+            int take = Math.min(batchRows, left);
+
+            ByteBuffer buffer = ByteBuffer.allocate(take * ROW_SIZE);
+            read(buffer, offset + 8 + headLength + (long) (batchRows - take) * ROW_SIZE);
+            for (int i = 0; i < take; i++) {
+                int at = i * ROW_SIZE;
+                records[left - take + i] = new FileManager.BMIRecord(
+                        buffer.getLong(at), buffer.getDouble(at + 8), buffer.getDouble(at + 16),
+                        buffer.getDouble(at + 24), BinaryRecordStore.toCategoryName(buffer.get(at + 32)));
+            }
+            left -= take;
+
+            if (left > 0) {
+                ByteBuffer headBytes = ByteBuffer.allocate(headLength);
+                read(headBytes, offset + 8);
+                offset = readPrevious(headBytes.array());
+            }
+        }
+        return new ArrayList<>(Arrays.asList(records));
+    }
+
+    @Override
+    public synchronized long countRecords(String name) {
+        History history = histories.get(name);
+        return history != null ? history.count : 0;
+    }
+
+    @Override
+    public synchronized boolean delete(String name) {
+        History history = histories.get(name);
+        if (history == null) {
+            return false;
+        }
+        try {
+            long size = writeEntry(head(DELETE_RECORDS, name, -1));
+            garbageBytes += size + history.bytes;
+            batchCount -= history.batches;
+            histories.remove(name);
+            indexIfDue();
+            return true;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Histories share one log file, so there is no per-user file
+     */
+    @Override
+    public File getRecordFile(String name) {
+        return null;
+    }
+
+    /**
+     * Size of the log file in bytes
+     */
+    public synchronized long getLogSize() {
+        return end;
+    }
+
+    /**
+     * Open the log, load the saved index and replay entries written after it
+     */
+    private void open() throws IOException {
+        channel = openLocked();
+        try {
+            if (channel.size() < HEADER_SIZE) {
+                generation = System.nanoTime();
+                channel.truncate(0);
+                writeHeader(channel, generation);
+                end = HEADER_SIZE;
+                return;
+            }
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            readFully(channel, header, 0);
+            if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+                throw new IOException("Not a key-value store: " + logFile);
+            }
+            generation = header.getLong(8);
+
+            if (!loadIndex()) {
+                users.clear();
+                histories.clear();
+                garbageBytes = 0;
+                batchCount = 0;
+                end = HEADER_SIZE;
+            }
+            indexedEnd = end;
+            replay();
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Apply every complete entry after the indexed part of the log, then cut
+     * off anything after the last one
+     */
+    private void replay() throws IOException {
+        long size = channel.size();
+        CRC32 crc = new CRC32();
+        channel.position(end);
+        InputStream buffered = new BufferedInputStream(Channels.newInputStream(channel), 64 * 1024);
+        DataInputStream in = new DataInputStream(new CheckedInputStream(buffered, crc));
+        byte[] rows = new byte[ROWS_PER_CHUNK * ROW_SIZE];
+
+        while (end + ENTRY_OVERHEAD <= size) {
+            crc.reset();
+            int headLength = in.readInt();
+            int rowCount = in.readInt();
+            long entrySize = ENTRY_OVERHEAD + headLength + (long) rowCount * ROW_SIZE;
+            if (headLength < 3 || rowCount < 0 || end + entrySize > size) {
+                break;
+            }
+            byte[] head = new byte[headLength];
+            in.readFully(head);
+            for (long left = (long) rowCount * ROW_SIZE; left > 0; ) {
+                int chunk = (int) Math.min(left, rows.length);
+                in.readFully(rows, 0, chunk);
+                left -= chunk;
+            }
+            int expected = (int) crc.getValue();
+            if (new DataInputStream(buffered).readInt() != expected) {
+                break;
+            }
+            apply(head, rowCount, end, entrySize);
+            end += entrySize;
+        }
+
+        if (end < size) {
+            System.out.println("Discarding " + (size - end) + " bytes of incomplete log entries: " + logFile);
+            channel.truncate(end);
+        }
+        channel.position(0);
+    }
+
+    /**
+     * Update the in-memory index for one replayed entry
+     */
+    private void apply(byte[] head, int rowCount, long offset, long entrySize) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(head));
+        byte type = in.readByte();
+        String name = in.readUTF();
+        switch (type) {
+            case USER:
+                FileManager.UserDetails user = new FileManager.UserDetails(name, in.readInt(), in.readUTF(), in.readUTF());
+                FileManager.UserDetails existing = users.put(name, user);
+                if (existing != null) {
+                    garbageBytes += ENTRY_OVERHEAD + userHead(existing).length;
+                }
+                break;
+            case DELETE_USER:
+                FileManager.UserDetails removed = users.remove(name);
+                garbageBytes += entrySize + (removed != null ? ENTRY_OVERHEAD + userHead(removed).length : 0);
+                break;
+            case RECORDS:
+                History history = histories.get(name);
+                if (history == null) {
+                    history = new History();
+                    histories.put(name, history);
+                }
+                addBatch(history, offset, rowCount, entrySize);
+                break;
+            case DELETE_RECORDS:
+                History deleted = histories.remove(name);
+                if (deleted != null) {
+                    garbageBytes += deleted.bytes;
+                    batchCount -= deleted.batches;
+                }
+                garbageBytes += entrySize;
+                break;
+            default:
+                throw new IOException("Unknown entry type " + type + " at offset " + offset + ": " + logFile);
+        }
+    }
+
+    private void addBatch(History history, long offset, long rows, long bytes) {
+        history.head = offset;
+        history.count += rows;
+        history.batches++;
+        history.bytes += bytes;
+        batchCount++;
+    }
+
+    /**
+     * Append an entry without rows
+     * @return the entry size
+     */
+    private long writeEntry(byte[] head) throws IOException {
+        long offset = end;
+        try {
+            end = new EntryWriter(this::write, offset, head, 0).finish();
+        } catch (IOException e) {
+            truncate(offset);
+            throw e;
+        }
+        return end - offset;
+    }
+
+    private static byte[] head(byte type, String name, long previous) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(32 + name.length());
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(type);
+        out.writeUTF(name);
+        if (type == RECORDS) {
+            out.writeLong(previous);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static byte[] userHead(FileManager.UserDetails user) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(USER);
+        out.writeUTF(user.getName());
+        out.writeInt(user.getAge());
+        out.writeUTF(user.getGender());
+        out.writeUTF(user.getCreatedAt());
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Offset of the previous batch from a RECORDS head
+     */
+    private static long readPrevious(byte[] head) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(head));
+        in.readByte();
+        in.readUTF();
+        return in.readLong();
+    }
+
+    private void indexIfDue() throws IOException {
+        if (end - indexedEnd >= INDEX_INTERVAL) {
+            saveIndex();
+        }
+    }
+
+    /**
+     * Atomically replace the saved index (write temp, then rename)
+     * The log is forced to disk first so the index never covers lost entries.
+     */
+    private void saveIndex() throws IOException {
+        io(current -> {
+            current.force(false);
+            return null;
+        });
+        File tempFile = File.createTempFile(indexFile.getName() + "_", ".tmp", indexFile.getAbsoluteFile().getParentFile());
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(tempFile), 64 * 1024))) {
+                out.writeInt(INDEX_MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(generation);
+                out.writeLong(end);
+                out.writeLong(garbageBytes);
+                out.writeInt(users.size());
+                for (FileManager.UserDetails user : users.values()) {
+                    out.writeUTF(user.getName());
+                    out.writeInt(user.getAge());
+                    out.writeUTF(user.getGender());
+                    out.writeUTF(user.getCreatedAt());
+                }
+                out.writeInt(histories.size());
+                for (Map.Entry<String, History> entry : histories.entrySet()) {
+                    History history = entry.getValue();
+                    out.writeUTF(entry.getKey());
+                    out.writeLong(history.head);
+                    out.writeLong(history.count);
+                    out.writeInt(history.batches);
+                    out.writeLong(history.bytes);
+                }
+            }
+            Files.move(tempFile.toPath(), indexFile.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            indexedEnd = end;
+        } finally {
+            tempFile.delete();
+        }
+    }
+
+    /**
+     * Load the saved index if it belongs to this log and covers no more than exists
+     */
+    private boolean loadIndex() throws IOException {
+        if (!indexFile.exists()) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(indexFile), 64 * 1024))) {
+            if (in.readInt() != INDEX_MAGIC || in.readInt() != VERSION || in.readLong() != generation) {
+                return false;
+            }
+            end = in.readLong();
+            if (end < HEADER_SIZE || end > channel.size()) {
+                return false;
+            }
+            garbageBytes = in.readLong();
+            for (int i = in.readInt(); i > 0; i--) {
+                String name = in.readUTF();
+                users.put(name, new FileManager.UserDetails(name, in.readInt(), in.readUTF(), in.readUTF()));
+            }
+            for (int i = in.readInt(); i > 0; i--) {
+                String name = in.readUTF();
+                History history = new History();
+                history.head = in.readLong();
+                history.count = in.readLong();
+                history.batches = in.readInt();
+                history.bytes = in.readLong();
+                histories.put(name, history);
+                batchCount += history.batches;
+            }
+            return true;
+        } catch (IOException e) {
+            // Unreadable indexes are rebuilt from the log
+            return false;
+        }
+    }
+
+    private boolean needsCompaction() {
+        return garbageBytes * 2 > end ||
+               batchCount > (long) MAX_BATCHES_PER_HISTORY * Math.max(1, histories.size());
+    }
+
+    /**
+     * Rewrite the log with one entry per user and one batch per history
+     * Only run while opening, before the store is shared; a crash leaves
+     * either the old or the new log, never a partial one.
+     */
+    private void compact() throws IOException {
+        long started = System.currentTimeMillis();
+        long oldSize = end;
+        File tempFile = new File(logFile.getPath() + ".compact");
+        long newGeneration = System.nanoTime();
+        LinkedHashMap<String, History> compacted = new LinkedHashMap<>();
+        long position;
+
+        try (FileChannel out = FileChannel.open(tempFile.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeHeader(out, newGeneration);
+            position = HEADER_SIZE;
+            for (FileManager.UserDetails user : users.values()) {
+                position = new EntryWriter((buffer, at) -> writeFully(out, buffer, at), position,
+                                           userHead(user), 0).finish();
+            }
+
+            ByteBuffer rows = ByteBuffer.allocate(ROWS_PER_CHUNK * ROW_SIZE);
+            for (Map.Entry<String, History> entry : histories.entrySet()) {
+                String name = entry.getKey();
+                long count = entry.getValue().count;
+                if (count > Integer.MAX_VALUE) {
+                    throw new IOException("History too long to compact: " + name);
+                }
+
+                long offset = position;
+                EntryWriter writer = new EntryWriter((buffer, at) -> writeFully(out, buffer, at), offset,
+                                                     head(RECORDS, name, -1), (int) count);
+                try (Cursor cursor = (Cursor) openCursor(name)) {
+                    for (int batch = 0; batch < cursor.offsets.length; batch++) {
+                        long left = (cursor.starts[batch + 1] - cursor.starts[batch]) * ROW_SIZE;
+                        for (long from = cursor.offsets[batch]; left > 0; ) {
+                            rows.clear();
+                            rows.limit((int) Math.min(left, rows.capacity()));
+                            read(rows, from);
+                            from += rows.limit();
+                            left -= rows.limit();
+                            rows.flip();
+                            writer.write(rows);
+                        }
+                    }
+                }
+                position = writer.finish();
+
+                History history = new History();
+                history.head = offset;
+                history.count = count;
+                history.batches = 1;
+                history.bytes = position - offset;
+                compacted.put(name, history);
+            }
+            out.force(true);
+        } catch (IOException e) {
+            tempFile.delete();
+            throw e;
+        }
+
+        channel.close();
+        Files.move(tempFile.toPath(), logFile.toPath(),
+                   StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        channel = openLocked();
+
+        histories.clear();
+        histories.putAll(compacted);
+        generation = newGeneration;
+        end = position;
+        garbageBytes = 0;
+        batchCount = compacted.size();
+        saveIndex();
+        System.out.println("Compacted " + logFile + ": " + oldSize + " -> " + end + " bytes in " +
+                           (System.currentTimeMillis() - started) + " ms");
+    }
+
+    /**
+     * Open the log and take the exclusive lock that keeps other stores out
+     */
+    private FileChannel openLocked() throws IOException {
+        FileChannel opened = FileChannel.open(logFile.toPath(), StandardOpenOption.CREATE,
+                                              StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            if (opened.tryLock() != null) {
+                return opened;
+            }
+        } catch (OverlappingFileLockException e) {
+            // Held by another store in this process
+        }
+        opened.close();
+        throw new IOException("Key-value store is already open elsewhere: " + logFile);
+    }
+
+    /**
+     * One operation on the log channel
+     */
+    private interface ChannelOperation<T> {
+        T apply(FileChannel channel) throws IOException;
+    }
+
+    /**
+     * Positional writes of a log entry, to the log or to a compacted copy
+     */
+    private interface EntrySink {
+        void write(ByteBuffer buffer, long position) throws IOException;
+    }
+
+    /**
+     * Run an operation on the log channel, reopening the channel and retrying
+     * if an interrupt closed it; the operation must be safe to repeat.
+     * It runs with the thread's interrupt cleared, which is restored afterwards.
+     */
+    private <T> T io(ChannelOperation<T> operation) throws IOException {
+        boolean interrupted = Thread.interrupted();
+        try {
+            while (true) {
+                FileChannel current = channel;
+                try {
+                    return operation.apply(current);
+                } catch (ClosedChannelException e) {
+                    interrupted |= Thread.interrupted();
+                    reopen(current, e);
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Replace a channel closed by an interrupt, unless another thread already has
+     */
+    private synchronized void reopen(FileChannel failed, ClosedChannelException cause) throws IOException {
+        if (closed) {
+            throw cause;
+        }
+        if (channel == failed) {
+            channel = openLocked();
+        }
+    }
+
+    private void read(ByteBuffer buffer, long position) throws IOException {
+        int start = buffer.position();
+        io(current -> {
+            buffer.position(start);
+            readFully(current, buffer, position);
+            return null;
+        });
+    }
+
+    private void write(ByteBuffer buffer, long position) throws IOException {
+        int start = buffer.position();
+        io(current -> {
+            buffer.position(start);
+            writeFully(current, buffer, position);
+            return null;
+        });
+    }
+
+    private void truncate(long size) throws IOException {
+        io(current -> current.truncate(size));
+    }
+
+    private static void writeHeader(FileChannel channel, long generation) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putLong(generation).flip();
+        writeFully(channel, header, 0);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException("Unexpected end of key-value log at " + position);
+            }
+            position += read;
+        }
+    }
+
+    /**
+     * Buffered writer of one log entry that keeps its running checksum
+     */
+    private static class EntryWriter {
+        private final EntrySink sink;
+        private final ByteBuffer buffer;
+        private final CRC32 crc = new CRC32();
+        private long position;
+
+        EntryWriter(EntrySink sink, long position, byte[] head, int rowCount) {
+            this.sink = sink;
+            this.position = position;
+            this.buffer = ByteBuffer.allocate(Math.max(ROWS_PER_CHUNK * ROW_SIZE, head.length + ENTRY_OVERHEAD));
+            buffer.putInt(head.length).putInt(rowCount).put(head);
+        }
+
+        /**
+         * Get the buffer with at least the given number of bytes free
+         */
+        ByteBuffer room(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+            return buffer;
+        }
+
+        /**
+         * Copy already encoded rows
+         */
+        void write(ByteBuffer rows) throws IOException {
+            while (rows.hasRemaining()) {
+                if (!buffer.hasRemaining()) {
+                    flush();
+                }
+                int count = Math.min(rows.remaining(), buffer.remaining());
+                ByteBuffer slice = rows.duplicate();
+                slice.limit(slice.position() + count);
+                buffer.put(slice);
+                rows.position(rows.position() + count);
+            }
+        }
+
+        /**
+         * Write the checksum
+         * @return the offset just past the entry
+         */
+        long finish() throws IOException {
+            flush();
+            buffer.putInt((int) crc.getValue());
+            buffer.flip();
+            sink.write(buffer, position);
+            return position + 4;
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            crc.update(buffer.array(), 0, buffer.limit());
+            int length = buffer.limit();
+            sink.write(buffer, position);
+            position += length;
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Cursor over a user's batches, read a chunk of rows at a time
+     */
+    private class Cursor implements RecordCursor {
+        private final long[] offsets; // file offset of each batch's first row
+        private final long[] starts;  // index of each batch's first row; the last entry is the row count
+        private final ByteBuffer buffer = ByteBuffer.allocate(ROWS_PER_CHUNK * ROW_SIZE);
+        private long bufferStart = 0;
+        private int bufferRows = 0;
+        private int batch = 0;
+        private long row = -1;
+
+        // Current row
+        private long timestamp;
+        private double weight;
+        private double height;
+        private double bmi;
+        private String category;
+
+        Cursor(long[] offsets, long[] starts) {
+            this.offsets = offsets;
+            this.starts = starts;
+        }
+
+        @Override
+        public boolean next() {
+            if (row + 1 >= getRecordCount()) {
+                return false;
+            }
+            load(row + 1);
+            return true;
+        }
+
+        @Override
+        public long getRowIndex() {
+            return row;
+        }
+
+        @Override
+        public long getRecordCount() {
+            return starts[starts.length - 1];
+        }
+
+        @Override
+        public void seek(long index) {
+            if (index < 0 || index >= getRecordCount()) {
+                throw new IndexOutOfBoundsException("Record " + index + " of " + getRecordCount());
+            }
+            load(index);
+        }
+
+        @Override public long getTimestampMillis() { return timestamp; }
+        @Override public String getTimestamp() { return Timestamps.format(timestamp); }
+        @Override public double getWeight() { return weight; }
+        @Override public double getHeight() { return height; }
+        @Override public double getBmi() { return bmi; }
+        @Override public String getCategory() { return category; }
+
+        @Override
+        public FileManager.BMIRecord toRecord() {
+            return new FileManager.BMIRecord(timestamp, weight, height, bmi, category);
+        }
+
+        @Override
+        public void close() {
+        }
+
+        private void load(long index) {
+            if (index < bufferStart || index >= bufferStart + bufferRows) {
+                fill(index);
+            }
+            int at = (int) (index - bufferStart) * ROW_SIZE;
+            timestamp = buffer.getLong(at);
+            weight = buffer.getDouble(at + 8);
+            height = buffer.getDouble(at + 16);
+            bmi = buffer.getDouble(at + 24);
+            category = BinaryRecordStore.toCategoryName(buffer.get(at + 32));
+            row = index;
+        }
+
+        /**
+         * Read the chunk of rows starting at index from its batch
+         */
+        private void fill(long index) {
+            if (index < starts[batch] || index >= starts[batch + 1]) {
+                int low = 0;
+                int high = offsets.length - 1;
+                while (low < high) {
+                    int mid = (low + high + 1) >>> 1;
+                    if (starts[mid] <= index) {
+                        low = mid;
+                    } else {
+                        high = mid - 1;
+                    }
+                }
+                batch = low;
+            }
+
+            int rows = (int) Math.min(ROWS_PER_CHUNK, starts[batch + 1] - index);
+            buffer.clear();
+            buffer.limit(rows * ROW_SIZE);
+            try {
+                read(buffer, offsets[batch] + (index - starts[batch]) * ROW_SIZE);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            bufferStart = index;
+            bufferRows = rows;
+        }
+    }
+}
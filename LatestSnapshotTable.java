@@ -0,0 +1,161 @@
+/**
+ * LatestSnapshotTable.java - Every user's latest measurement in primitive arrays
+ * One slot per user holds the last record of their history: timestamp as
+ * epoch millis, weight, height and BMI as doubles, category as a one-byte
+ * code. A legacy timestamp that could not be parsed keeps its original text,
+ * which is shown instead, as the text backend does. Dashboards
+ * that need "current BMI of everyone" scan the arrays instead of parsing a
+ * file per user. FileManager builds the table from file tails on first use
+ * and keeps it current on every append and delete.
+ */
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+public class LatestSnapshotTable {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final HashMap<String, Integer> slots = new HashMap<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private String[] names = new String[INITIAL_CAPACITY];
+    private long[] timestamps = new long[INITIAL_CAPACITY];
+    // Original text of invalid timestamps, null for valid ones
+    private String[] invalidTimestamps = new String[INITIAL_CAPACITY];
+    private double[] weights = new double[INITIAL_CAPACITY];
+    private double[] heights = new double[INITIAL_CAPACITY];
+    private double[] bmis = new double[INITIAL_CAPACITY];
+    private byte[] categories = new byte[INITIAL_CAPACITY];
+    private int size = 0;
+
+    /**
+     * Receives one user's latest measurement during forEach
+     */
+    public interface Visitor {
+        void visit(String name, long timestampMillis, String timestamp, double weight, double height,
+                   double bmi, String category);
+    }
+
+    /**
+     * Set a user's latest measurement
+     */
+    public void put(String name, FileManager.BMIRecord record) {
+        lock.writeLock().lock();
+        try {
+            Integer slot = slots.get(name);
+            int index;
+            if (slot != null) {
+                index = slot;
+            } else {
+                if (size == names.length) {
+                    grow();
+                }
+                index = size++;
+                names[index] = name;
+                slots.put(name, index);
+            }
+            timestamps[index] = record.getTimestampMillis();
+            invalidTimestamps[index] = record.hasValidTimestamp() ? null : record.getTimestamp();
+            weights[index] = record.getWeight();
+            heights[index] = record.getHeight();
+            bmis[index] = record.getBmi();
+            categories[index] = BinaryRecordStore.toCategoryCode(record.getCategory());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Drop a user, moving the last slot into the gap
+     */
+    public void remove(String name) {
+        lock.writeLock().lock();
+        try {
+            Integer slot = slots.remove(name);
+            if (slot == null) {
+                return;
+            }
+            int index = slot;
+            int last = --size;
+            if (index != last) {
+                names[index] = names[last];
+                timestamps[index] = timestamps[last];
+                invalidTimestamps[index] = invalidTimestamps[last];
+                weights[index] = weights[last];
+                heights[index] = heights[last];
+                bmis[index] = bmis[last];
+                categories[index] = categories[last];
+                slots.put(names[index], index);
+            }
+            names[last] = null;
+            invalidTimestamps[last] = null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Get a user's latest measurement, or null if they have no records
+     */
+    public FileManager.BMIRecord get(String name) {
+        lock.readLock().lock();
+        try {
+            Integer slot = slots.get(name);
+            if (slot == null) {
+                return null;
+            }
+            int index = slot;
+            String category = BinaryRecordStore.toCategoryName(categories[index]);
+            if (invalidTimestamps[index] != null) {
+                return new FileManager.BMIRecord(invalidTimestamps[index], weights[index], heights[index],
+                                                 bmis[index], category);
+            }
+            return new FileManager.BMIRecord(timestamps[index], weights[index], heights[index],
+                                             bmis[index], category);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Number of users with a latest measurement
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Visit every user's latest measurement, in no particular order
+     * Writers wait until the scan is done, so keep the visitor cheap.
+     */
+    public void forEach(Visitor visitor) {
+        lock.readLock().lock();
+        try {
+            for (int i = 0; i < size; i++) {
+                String timestamp = invalidTimestamps[i] != null ? invalidTimestamps[i]
+                                                                : Timestamps.format(timestamps[i]);
+                visitor.visit(names[i], timestamps[i], timestamp, weights[i], heights[i], bmis[i],
+                              BinaryRecordStore.toCategoryName(categories[i]));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void grow() {
+        int capacity = names.length * 2;
+        names = Arrays.copyOf(names, capacity);
+        timestamps = Arrays.copyOf(timestamps, capacity);
+        invalidTimestamps = Arrays.copyOf(invalidTimestamps, capacity);
+        weights = Arrays.copyOf(weights, capacity);
+        heights = Arrays.copyOf(heights, capacity);
+        bmis = Arrays.copyOf(bmis, capacity);
+        categories = Arrays.copyOf(categories, capacity);
+    }
+}
@@ -0,0 +1,400 @@
+/**
+ * PopulationAnalytics.java - BMI analytics across every registered user
+ * The user list is split recursively on a fork/join pool; each leaf task
+ * streams its users' records through RecordCursor and builds a partial
+ * Aggregate, and partials are merged on the way back up. Work is spread
+ * over all cores and no history is ever held in memory.
+ *
+ * Cohort breakdowns (category, age band, gender) use each user's latest
+ * record, i.e. the population as it is now. The trend is the average BMI of
+ * all records taken in each calendar month.
+ * Users whose records cannot be read are counted and reported in the summary.
+ *
+ * Usage: java PopulationAnalytics
+ * The storage backend is chosen by the bmitracker.* system properties.
+ */
+
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+public class PopulationAnalytics {
+    public static final int AGE_BAND_YEARS = 10;
+
+    // Users per leaf task: enough work to outweigh the task overhead
+    private static final int USERS_PER_TASK = 32;
+
+    private static final String[] CATEGORY_NAMES = {
+        BMICalculator.categoryName(BMICalculator.UNDERWEIGHT),
+        BMICalculator.categoryName(BMICalculator.NORMAL_WEIGHT),
+        BMICalculator.categoryName(BMICalculator.OVERWEIGHT),
+        BMICalculator.categoryName(BMICalculator.OBESE),
+        "Unknown"
+    };
+    private static final int UNKNOWN_SLOT = CATEGORY_NAMES.length - 1;
+
+    private final FileManager fileManager;
+    private final ForkJoinPool pool;
+
+    /**
+     * Constructor - Runs on the common fork/join pool
+     */
+    public PopulationAnalytics(FileManager fileManager) {
+        this(fileManager, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Constructor
+     * @param pool Pool to run on, e.g. one sized to leave cores free for the UI
+     */
+    public PopulationAnalytics(FileManager fileManager, ForkJoinPool pool) {
+        this.fileManager = fileManager;
+        this.pool = pool;
+    }
+
+    /**
+     * Analyze every registered user
+     */
+    public PopulationReport analyze() {
+        long start = System.currentTimeMillis();
+        ArrayList<String> names = fileManager.getAllUsers();
+        Aggregate total = pool.invoke(new UsersTask(names, 0, names.size()));
+        return new PopulationReport(total, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Aggregates a slice of the user list, splitting it in half until small
+     */
+    private class UsersTask extends RecursiveTask<Aggregate> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<String> names;
+        private final int from;
+        private final int to;
+
+        UsersTask(List<String> names, int from, int to) {
+            this.names = names;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Aggregate compute() {
+            if (to - from <= USERS_PER_TASK) {
+                Aggregate aggregate = new Aggregate();
+                for (int i = from; i < to; i++) {
+                    aggregate.addUser(fileManager, names.get(i));
+                }
+                return aggregate;
+            }
+
+            int middle = (from + to) >>> 1;
+            UsersTask left = new UsersTask(names, from, middle);
+            left.fork();
+            Aggregate right = new UsersTask(names, middle, to).compute();
+            Aggregate aggregate = left.join();
+            aggregate.merge(right);
+            return aggregate;
+        }
+    }
+
+    /**
+     * Count, mean, spread and range of a set of BMIs, mergeable across tasks
+     */
+    public static class Cohort {
+        private long count = 0;
+        private double mean = 0;
+        private double squaredDiffs = 0;
+        private double min = Double.POSITIVE_INFINITY;
+        private double max = Double.NEGATIVE_INFINITY;
+
+        void add(double bmi) {
+            count++;
+            double delta = bmi - mean;
+            mean += delta / count;
+            squaredDiffs += delta * (bmi - mean);
+            min = Math.min(min, bmi);
+            max = Math.max(max, bmi);
+        }
+
+        void merge(Cohort other) {
+            if (other.count == 0) {
+                return;
+            }
+            long total = count + other.count;
+            double delta = other.mean - mean;
+            mean += delta * other.count / total;
+            squaredDiffs += other.squaredDiffs + delta * delta * ((double) count * other.count / total);
+            count = total;
+            min = Math.min(min, other.min);
+            max = Math.max(max, other.max);
+        }
+
+        // Getters
+        public long getCount() { return count; }
+        public double getAverageBMI() { return count > 0 ? mean : Double.NaN; }
+        public double getStdDevBMI() { return count > 1 ? Math.sqrt(squaredDiffs / count) : 0; }
+        public double getMinBMI() { return min; }
+        public double getMaxBMI() { return max; }
+
+        @Override
+        public String toString() {
+            return String.format("%d, avg %.2f, sd %.2f, range %.2f - %.2f",
+                               count, getAverageBMI(), getStdDevBMI(), min, max);
+        }
+    }
+
+    /**
+     * Partial results of one task
+     */
+    private static class Aggregate {
+        final StatisticsAccumulator records = new StatisticsAccumulator();
+        final long[] recordsByCategory = new long[CATEGORY_NAMES.length];
+        final long[] usersByCategory = new long[CATEGORY_NAMES.length];
+        final Cohort latest = new Cohort();
+        final TreeMap<Integer, Cohort> byAgeBand = new TreeMap<>();
+        final TreeMap<String, Cohort> byGender = new TreeMap<>();
+        final TreeMap<Integer, Cohort> byMonth = new TreeMap<>(); // year * 12 + month - 1
+        int users = 0;
+        int usersWithoutRecords = 0;
+        int failedUsers = 0;
+
+        // Bounds of the month of the last record seen, so most records skip the date math
+        private long monthStart = Long.MAX_VALUE;
+        private long monthEnd = Long.MIN_VALUE;
+        private int monthKey;
+
+        void addUser(FileManager fileManager, String name) {
+            FileManager.UserDetails user = fileManager.getUserDetails(name);
+            if (user == null) {
+                return; // deleted since the user list was taken
+            }
+            users++;
+
+            long latestTime = Long.MIN_VALUE;
+            double latestBMI = 0;
+            int latestCategory = UNKNOWN_SLOT;
+            boolean any = false;
+            try (RecordCursor cursor = fileManager.openRecordReader(name)) {
+                while (cursor.next()) {
+                    double bmi = cursor.getBmi();
+                    long time = cursor.getTimestampMillis();
+                    int category = categorySlot(cursor.getCategory());
+
+                    records.add(cursor.getWeight(), bmi);
+                    recordsByCategory[category]++;
+                    if (time > 0) {
+                        cohort(byMonth, month(time)).add(bmi);
+                    }
+                    if (!any || time >= latestTime) {
+                        latestTime = time;
+                        latestBMI = bmi;
+                        latestCategory = category;
+                        any = true;
+                    }
+                }
+            } catch (IOException e) {
+                failedUsers++;
+                return;
+            }
+
+            if (!any) {
+                usersWithoutRecords++;
+                return;
+            }
+            usersByCategory[latestCategory]++;
+            latest.add(latestBMI);
+            // Bulk-imported users may have no age yet
+            if (user.getAge() > 0) {
+                cohort(byAgeBand, user.getAge() / AGE_BAND_YEARS * AGE_BAND_YEARS).add(latestBMI);
+            }
+            String gender = user.getGender() == null || user.getGender().trim().isEmpty()
+                    ? "Unspecified" : user.getGender().trim();
+            cohort(byGender, gender).add(latestBMI);
+        }
+
+        void merge(Aggregate other) {
+            records.merge(other.records);
+            for (int i = 0; i < CATEGORY_NAMES.length; i++) {
+                recordsByCategory[i] += other.recordsByCategory[i];
+                usersByCategory[i] += other.usersByCategory[i];
+            }
+            latest.merge(other.latest);
+            mergeCohorts(byAgeBand, other.byAgeBand);
+            mergeCohorts(byGender, other.byGender);
+            mergeCohorts(byMonth, other.byMonth);
+            users += other.users;
+            usersWithoutRecords += other.usersWithoutRecords;
+            failedUsers += other.failedUsers;
+        }
+
+        private int month(long time) {
+            if (time < monthStart || time >= monthEnd) {
+                ZoneId zone = ZoneId.systemDefault();
+                LocalDate first = Instant.ofEpochMilli(time).atZone(zone).toLocalDate().withDayOfMonth(1);
+                monthStart = first.atStartOfDay(zone).toInstant().toEpochMilli();
+                monthEnd = first.plusMonths(1).atStartOfDay(zone).toInstant().toEpochMilli();
+                monthKey = first.getYear() * 12 + first.getMonthValue() - 1;
+            }
+            return monthKey;
+        }
+
+        private static int categorySlot(String category) {
+            int code = BMICalculator.categoryCode(category);
+            return code >= 0 && code < UNKNOWN_SLOT ? code : UNKNOWN_SLOT;
+        }
+
+        private static <K> Cohort cohort(TreeMap<K, Cohort> cohorts, K key) {
+            Cohort cohort = cohorts.get(key);
+            if (cohort == null) {
+                cohort = new Cohort();
+                cohorts.put(key, cohort);
+            }
+            return cohort;
+        }
+
+        private static <K> void mergeCohorts(TreeMap<K, Cohort> target, TreeMap<K, Cohort> source) {
+            for (Map.Entry<K, Cohort> entry : source.entrySet()) {
+                cohort(target, entry.getKey()).merge(entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Results of a population analysis
+     */
+    public static class PopulationReport {
+        private final Aggregate aggregate;
+        private final long elapsedMillis;
+
+        private PopulationReport(Aggregate aggregate, long elapsedMillis) {
+            this.aggregate = aggregate;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        public int getUserCount() { return aggregate.users; }
+        public int getUsersWithoutRecords() { return aggregate.usersWithoutRecords; }
+        public int getFailedUsers() { return aggregate.failedUsers; }
+        public long getElapsedMillis() { return elapsedMillis; }
+
+        /**
+         * Statistics over every record of every user, or null if there are none
+         */
+        public FileManager.BMIStatistics getAllRecords() {
+            return aggregate.records.toStatistics();
+        }
+
+        /**
+         * Latest BMI of every user with records
+         */
+        public Cohort getLatest() {
+            return aggregate.latest;
+        }
+
+        /**
+         * Number of users whose latest record is in each category
+         */
+        public Map<String, Long> getUsersByCategory() {
+            return byCategory(aggregate.usersByCategory);
+        }
+
+        /**
+         * Number of records in each category
+         */
+        public Map<String, Long> getRecordsByCategory() {
+            return byCategory(aggregate.recordsByCategory);
+        }
+
+        /**
+         * Latest BMIs by age band, keyed by the band's lowest age (e.g. 30 for 30-39); users without an age are left out
+         */
+        public TreeMap<Integer, Cohort> getByAgeBand() {
+            return new TreeMap<>(aggregate.byAgeBand);
+        }
+
+        /**
+         * Latest BMIs by gender
+         */
+        public TreeMap<String, Cohort> getByGender() {
+            return new TreeMap<>(aggregate.byGender);
+        }
+
+        /**
+         * BMIs of all records taken in each month
+         */
+        public TreeMap<YearMonth, Cohort> getMonthlyTrend() {
+            TreeMap<YearMonth, Cohort> trend = new TreeMap<>();
+            for (Map.Entry<Integer, Cohort> entry : aggregate.byMonth.entrySet()) {
+                int key = entry.getKey();
+                trend.put(YearMonth.of(Math.floorDiv(key, 12), Math.floorMod(key, 12) + 1), entry.getValue());
+            }
+            return trend;
+        }
+
+        private static Map<String, Long> byCategory(long[] counts) {
+            Map<String, Long> map = new java.util.LinkedHashMap<>();
+            for (int i = 0; i < CATEGORY_NAMES.length; i++) {
+                if (i < UNKNOWN_SLOT || counts[i] > 0) {
+                    map.put(CATEGORY_NAMES[i], counts[i]);
+                }
+            }
+            return map;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder();
+            text.append(String.format("Users: %d (%d without records, %d unreadable)\n",
+                                      getUserCount(), getUsersWithoutRecords(), getFailedUsers()));
+            FileManager.BMIStatistics all = getAllRecords();
+            if (all != null) {
+                text.append("\nAll records:\n").append(all).append('\n');
+            }
+            text.append("\nLatest BMI per user: ").append(getLatest()).append('\n');
+
+            text.append("\nUsers by current category:\n");
+            for (Map.Entry<String, Long> entry : getUsersByCategory().entrySet()) {
+                text.append(String.format("  %-14s %d\n", entry.getKey(), entry.getValue()));
+            }
+            text.append("\nBy age band:\n");
+            for (Map.Entry<Integer, Cohort> entry : getByAgeBand().entrySet()) {
+                int band = entry.getKey();
+                text.append(String.format("  %-14s %s\n", band + "-" + (band + AGE_BAND_YEARS - 1), entry.getValue()));
+            }
+            text.append("\nBy gender:\n");
+            for (Map.Entry<String, Cohort> entry : getByGender().entrySet()) {
+                text.append(String.format("  %-14s %s\n", entry.getKey(), entry.getValue()));
+            }
+            text.append("\nMonthly trend:\n");
+            for (Map.Entry<YearMonth, Cohort> entry : getMonthlyTrend().entrySet()) {
+                text.append(String.format("  %-14s %s\n", entry.getKey(), entry.getValue()));
+            }
+            text.append(String.format("\nTime: %.2f s", elapsedMillis / 1000.0));
+            return text.toString();
+        }
+    }
+
+    /**
+     * Command line entry point
+     */
+    public static void main(String[] args) {
+        if (args.length > 0) {
+            System.out.println("Usage: java PopulationAnalytics");
+            return;
+        }
+        FileManager fileManager = new FileManager();
+        try {
+            System.out.println(new PopulationAnalytics(fileManager).analyze());
+        } finally {
+            fileManager.close();
+        }
+    }
+}
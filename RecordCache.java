@@ -0,0 +1,140 @@
+/**
+ * RecordCache.java - Byte-bounded LRU cache of parsed user histories
+ * Sits in front of FileManager.getUserRecords so opening the same history
+ * again does not re-parse its file. The budget is in estimated heap bytes,
+ * not entries, so one huge history cannot crowd out the rest unnoticed;
+ * least recently used histories are evicted first. FileManager invalidates a
+ * user's entry under their write lock on every append and delete.
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class RecordCache {
+    // Estimated heap bytes of a BMIRecord with its timestamp text, plus its array slot
+    private static final long RECORD_BYTES = 128;
+    // Estimated bytes of a cache entry and its map node, besides the records
+    private static final long ENTRY_BYTES = 128;
+
+    private final long maxBytes;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes = 0;
+
+    // Counters for tuning the budget
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+    private long invalidations = 0;
+
+    /**
+     * One cached history; the array is never modified once cached
+     */
+    private static class Entry {
+        final FileManager.BMIRecord[] records;
+        final long bytes;
+
+        Entry(FileManager.BMIRecord[] records, long bytes) {
+            this.records = records;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * Constructor
+     * @param maxBytes Budget in estimated heap bytes; 0 disables caching
+     */
+    public RecordCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Get a copy of a user's cached history, or null on a miss
+     */
+    public ArrayList<FileManager.BMIRecord> get(String name) {
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(name);
+            if (entry == null) {
+                misses++;
+                return null;
+            }
+            hits++;
+        }
+        return new ArrayList<>(Arrays.asList(entry.records));
+    }
+
+    /**
+     * Cache a user's history, evicting least recently used ones to stay in budget
+     * Histories larger than the whole budget are not cached.
+     */
+    public void put(String name, List<FileManager.BMIRecord> records) {
+        long size = ENTRY_BYTES + name.length() * 2L + records.size() * RECORD_BYTES;
+        if (size > maxBytes) {
+            return;
+        }
+        Entry entry = new Entry(records.toArray(new FileManager.BMIRecord[0]), size);
+
+        synchronized (this) {
+            Entry old = entries.put(name, entry);
+            if (old != null) {
+                bytes -= old.bytes;
+            }
+            bytes += size;
+
+            Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+            while (bytes > maxBytes && eldest.hasNext()) {
+                Entry evicted = eldest.next().getValue();
+                eldest.remove();
+                bytes -= evicted.bytes;
+                evictions++;
+            }
+        }
+    }
+
+    /**
+     * Drop a user's history after it changed
+     */
+    public synchronized void invalidate(String name) {
+        Entry entry = entries.remove(name);
+        if (entry != null) {
+            bytes -= entry.bytes;
+            invalidations++;
+        }
+    }
+
+    /**
+     * Drop every cached history; counters are kept
+     */
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    // Getters
+    public long getMaxBytes() { return maxBytes; }
+    public synchronized long getBytes() { return bytes; }
+    public synchronized int getEntryCount() { return entries.size(); }
+    public synchronized long getHitCount() { return hits; }
+    public synchronized long getMissCount() { return misses; }
+    public synchronized long getEvictionCount() { return evictions; }
+    public synchronized long getInvalidationCount() { return invalidations; }
+
+    /**
+     * Fraction of lookups served from the cache, or 0 before any lookup
+     */
+    public synchronized double getHitRate() {
+        long lookups = hits + misses;
+        return lookups > 0 ? (double) hits / lookups : 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%d histories, %.1f of %.1f MB, %d hits, %d misses (%.0f%%), %d evictions, %d invalidations",
+                             entries.size(), bytes / 1048576.0, maxBytes / 1048576.0, hits, misses,
+                             getHitRate() * 100, evictions, invalidations);
+    }
+}
@@ -0,0 +1,46 @@
+/**
+ * RecordCursor.java - Forward cursor over one user's records
+ * Decodes a row at a time so histories can be scanned, exported or paged
+ * without building a list of BMIRecord objects. Every RecordStore backend
+ * hands out its own implementation.
+ */
+
+import java.io.Closeable;
+
+public interface RecordCursor extends Closeable {
+    /**
+     * Advance to the next row
+     * @return false when there are no more rows
+     */
+    boolean next();
+
+    /**
+     * Index of the current row, or -1 before the first call to next()
+     */
+    long getRowIndex();
+
+    /**
+     * Number of rows, or -1 if it is only known after a full scan
+     */
+    long getRecordCount();
+
+    /**
+     * Jump to the Nth row, which becomes the current row
+     * Direct for backends that know getRecordCount(); text files scan forward to it.
+     * @throws IndexOutOfBoundsException if there is no such row
+     */
+    void seek(long index);
+
+    // Accessors for the current row
+    long getTimestampMillis();
+    String getTimestamp();
+    double getWeight();
+    double getHeight();
+    double getBmi();
+    String getCategory();
+
+    /**
+     * Copy the current row into a BMIRecord object
+     */
+    FileManager.BMIRecord toRecord();
+}
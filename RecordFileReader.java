@@ -0,0 +1,533 @@
+/**
+ * RecordFileReader.java - Low-allocation cursor over a user's records file
+ * Reads the file through one reused window and decodes one row at a time in
+ * place, so large histories can be scanned without building a list of
+ * BMIRecord objects. Works on both the text (_records.txt) and binary
+ * (_records.bin) formats. Text files remember where every CHECKPOINT_ROWS-th
+ * row starts as they are scanned, so seek() only rescans from the nearest one.
+ *
+ * The window is filled with positional reads instead of a memory mapping:
+ * a mapping outlives close() until it is garbage collected, and Windows
+ * refuses to delete or truncate a file while it is mapped. Once this reader
+ * is closed the file can be deleted or appended to straight away.
+ */
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.time.DateTimeException;
+import java.util.Arrays;
+
+public class RecordFileReader implements RecordCursor {
+    private static final byte SEPARATOR = '|';
+    private static final int TIMESTAMP_LENGTH = Timestamps.LENGTH;
+
+    // Known categories are returned as shared constants instead of new strings
+    private static final String[] CATEGORIES = BinaryRecordStore.CATEGORIES;
+    private static final byte[][] CATEGORY_BYTES = new byte[CATEGORIES.length][];
+    static {
+        for (int i = 0; i < CATEGORIES.length; i++) {
+            CATEGORY_BYTES[i] = CATEGORIES[i].getBytes();
+        }
+    }
+
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    // Bytes read from the file at a time
+    private static final int WINDOW_SIZE = 256 * 1024;
+    // Text rows between remembered row offsets
+    private static final int CHECKPOINT_ROWS = TimeIndex.BLOCK_SIZE;
+
+    private final RandomAccessFile file;
+    private final int size;
+    private final byte[] window;
+    private final ByteBuffer windowBuffer;
+    private int windowStart = 0;
+    private int windowLength = 0;
+    private final boolean binary;
+    private final long recordCount;
+
+    // Read position of the next row
+    private int position;
+    private int rowStart;
+    private long rowIndex = -1;
+    // False after tail(), whose row indexes do not count from the start of the file
+    private boolean absoluteRows = true;
+
+    // Byte offsets of text rows 0, CHECKPOINT_ROWS, 2 * CHECKPOINT_ROWS, ... seen so far
+    private int[] checkpoints = new int[16];
+    private int checkpointCount = 0;
+
+    // Current row
+    private int timestampStart;
+    private int timestampLength;
+    private long timestampMillis;
+    private boolean timestampParsed;
+    private double weight;
+    private double height;
+    private double bmi;
+    private String category;
+
+    // Reused scratch state so scanning allocates nothing per row
+    private final int[] fieldEnds = new int[4];
+
+    private RecordFileReader(RandomAccessFile file, int size) {
+        this.file = file;
+        this.size = size;
+        this.window = new byte[Math.min(size, WINDOW_SIZE)];
+        this.windowBuffer = ByteBuffer.wrap(window);
+        this.binary = size >= BinaryRecordStore.HEADER_SIZE &&
+                      windowBuffer.getInt(load(0, 4)) == BinaryRecordStore.MAGIC;
+        this.recordCount = binary
+                ? (size - BinaryRecordStore.HEADER_SIZE) / BinaryRecordStore.RECORD_SIZE
+                : -1;
+        this.position = binary ? BinaryRecordStore.HEADER_SIZE : 0;
+    }
+
+    /**
+     * Open a records file; a missing file gives a reader with no rows
+     * Rows appended after opening are not seen.
+     */
+    public static RecordFileReader open(File file) throws IOException {
+        if (!file.exists()) {
+            return new RecordFileReader(null, 0);
+        }
+
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            long size = raf.length();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Records file too large to read: " + file);
+            }
+            return new RecordFileReader(raf, (int) size);
+        } catch (IOException | UncheckedIOException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Check whether the file is in the fixed-width binary format
+     */
+    public boolean isBinary() {
+        return binary;
+    }
+
+    /**
+     * Number of rows for binary files, or -1 for text files (unknown until scanned)
+     */
+    @Override
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * Index of the current row, or -1 before the first call to next()
+     */
+    @Override
+    public long getRowIndex() {
+        return rowIndex;
+    }
+
+    /**
+     * Advance to the next row
+     * Malformed text lines are skipped, as in FileManager.getUserRecords
+     * @return false when there are no more rows
+     */
+    @Override
+    public boolean next() {
+        if (binary) {
+            if (rowIndex + 1 >= recordCount) {
+                return false;
+            }
+            readBinaryRow(rowIndex + 1);
+            return true;
+        }
+
+        while (position < size) {
+            int lineStart = position;
+            int lineEnd = findLineEnd(lineStart);
+            position = lineEnd + 1;
+            if (lineEnd > lineStart && byteAt(lineEnd - 1) == '\r') {
+                lineEnd--;
+            }
+            if (parseTextRow(lineStart, lineEnd)) {
+                rowStart = lineStart;
+                rowIndex++;
+                if (absoluteRows && rowIndex == (long) checkpointCount * CHECKPOINT_ROWS) {
+                    addCheckpoint(lineStart);
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Jump to the Nth row
+     * Binary files read the row directly; text files scan forward from the
+     * nearest checkpoint at or before it (or from the current row if closer).
+     */
+    @Override
+    public void seek(long index) {
+        if (binary) {
+            if (index < 0 || index >= recordCount) {
+                throw new IndexOutOfBoundsException("Record " + index + " of " + recordCount);
+            }
+            readBinaryRow(index);
+            return;
+        }
+
+        if (index < 0) {
+            throw new IndexOutOfBoundsException("Record " + index);
+        }
+        int checkpoint = (int) Math.min(index / CHECKPOINT_ROWS, checkpointCount - 1);
+        long checkpointRow = (long) checkpoint * CHECKPOINT_ROWS;
+        if (!absoluteRows || rowIndex > index || rowIndex < checkpointRow) {
+            rewind(checkpoint >= 0 ? checkpoints[checkpoint] : 0, Math.max(checkpointRow, 0));
+        }
+        while (rowIndex < index) {
+            if (!next()) {
+                throw new IndexOutOfBoundsException("Record " + index + " of " + (rowIndex + 1));
+            }
+        }
+    }
+
+    private void addCheckpoint(int offset) {
+        if (checkpointCount == checkpoints.length) {
+            checkpoints = Arrays.copyOf(checkpoints, checkpointCount * 2);
+        }
+        checkpoints[checkpointCount++] = offset;
+    }
+
+    /**
+     * Reposition so next() returns only the last count rows, touching only
+     * the end of the file
+     * Text files are scanned backwards for well-formed lines; row indexes
+     * then count from the first of those rows, as the total is unknown.
+     */
+    public void tail(long count) {
+        if (binary) {
+            rowIndex = Math.max(0, recordCount - count) - 1;
+            return;
+        }
+
+        int end = size;
+        int first = end;
+        long found = 0;
+        while (found < count) {
+            int start = end;
+            while (start > 0 && byteAt(start - 1) != '\n') {
+                start--;
+            }
+            int lineEnd = end;
+            if (lineEnd > start && byteAt(lineEnd - 1) == '\r') {
+                lineEnd--;
+            }
+            if (parseTextRow(start, lineEnd)) {
+                first = start;
+                found++;
+            }
+            if (start == 0) {
+                break;
+            }
+            end = start - 1;
+        }
+        rewind(first, 0);
+        absoluteRows = false;
+    }
+
+    /**
+     * Byte offset in the file where the current row starts
+     */
+    public int getRowStart() {
+        return rowStart;
+    }
+
+    /**
+     * Reposition so the next call to next() reads the row starting at the given
+     * offset, previously obtained from getRowStart() for row rowIndex
+     */
+    public void rewind(int offset, long rowIndex) {
+        if (offset < 0 || offset > size) {
+            throw new IndexOutOfBoundsException("Offset " + offset);
+        }
+        this.position = offset;
+        this.rowIndex = rowIndex - 1;
+        this.absoluteRows = true;
+    }
+
+    // Accessors for the current row
+    @Override public double getWeight() { return weight; }
+    @Override public double getHeight() { return height; }
+    @Override public double getBmi() { return bmi; }
+    @Override public String getCategory() { return category; }
+
+    /**
+     * Timestamp of the current row in epoch millis
+     */
+    @Override
+    public long getTimestampMillis() {
+        if (!timestampParsed) {
+            timestampMillis = parseTimestamp();
+            timestampParsed = true;
+        }
+        return timestampMillis;
+    }
+
+    /**
+     * Timestamp of the current row as dd/MM/yyyy HH:mm:ss
+     */
+    @Override
+    public String getTimestamp() {
+        if (binary) {
+            return Timestamps.format(timestampMillis);
+        }
+        return decode(timestampStart, timestampLength);
+    }
+
+    /**
+     * Copy the current row into a BMIRecord object
+     */
+    @Override
+    public FileManager.BMIRecord toRecord() {
+        if (binary) {
+            return new FileManager.BMIRecord(timestampMillis, weight, height, bmi, category);
+        }
+        return new FileManager.BMIRecord(getTimestamp(), weight, height, bmi, category);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (file != null) {
+            file.close();
+        }
+    }
+
+    private void readBinaryRow(long index) {
+        int offset = (int) (BinaryRecordStore.HEADER_SIZE + index * BinaryRecordStore.RECORD_SIZE);
+        int at = load(offset, BinaryRecordStore.RECORD_SIZE);
+        timestampMillis = windowBuffer.getLong(at);
+        timestampParsed = true;
+        weight = windowBuffer.getDouble(at + 8);
+        height = windowBuffer.getDouble(at + 16);
+        bmi = windowBuffer.getDouble(at + 24);
+        category = BinaryRecordStore.toCategoryName(window[at + 32]);
+        rowIndex = index;
+        rowStart = offset;
+        position = offset + BinaryRecordStore.RECORD_SIZE;
+    }
+
+    /**
+     * Decode date|weight|height|bmi|category in place
+     */
+    private boolean parseTextRow(int start, int end) {
+        int found = 0;
+        for (int i = start; i < end && found < 4; i++) {
+            if (byteAt(i) == SEPARATOR) {
+                fieldEnds[found++] = i;
+            }
+        }
+        if (found < 4) {
+            return false;
+        }
+
+        int categoryEnd = end;
+        for (int i = fieldEnds[3] + 1; i < end; i++) {
+            if (byteAt(i) == SEPARATOR) {
+                categoryEnd = i;
+                break;
+            }
+        }
+
+        try {
+            weight = parseDouble(fieldEnds[0] + 1, fieldEnds[1]);
+            height = parseDouble(fieldEnds[1] + 1, fieldEnds[2]);
+            bmi = parseDouble(fieldEnds[2] + 1, fieldEnds[3]);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+
+        timestampStart = start;
+        timestampLength = fieldEnds[0] - start;
+        timestampParsed = false;
+        category = matchCategory(fieldEnds[3] + 1, categoryEnd);
+        return true;
+    }
+
+    /**
+     * Parse a plain decimal without creating a String
+     * Falls back to Double.parseDouble for anything unusual (exponents, long mantissas)
+     */
+    private double parseDouble(int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (byteAt(i) == '-' || byteAt(i) == '+')) {
+            negative = byteAt(i) == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int digits = 0;
+        int fractionDigits = -1;
+        for (; i < end; i++) {
+            byte b = byteAt(i);
+            if (b >= '0' && b <= '9') {
+                mantissa = mantissa * 10 + (b - '0');
+                digits++;
+                if (fractionDigits >= 0) {
+                    fractionDigits++;
+                }
+            } else if (b == '.' && fractionDigits < 0) {
+                fractionDigits = 0;
+            } else {
+                return Double.parseDouble(decode(start, end - start));
+            }
+        }
+
+        if (digits == 0 || digits > 15 || fractionDigits >= POWERS_OF_TEN.length) {
+            return Double.parseDouble(decode(start, end - start));
+        }
+
+        double value = fractionDigits > 0 ? mantissa / POWERS_OF_TEN[fractionDigits] : mantissa;
+        return negative ? -value : value;
+    }
+
+    private String matchCategory(int start, int end) {
+        int length = end - start;
+        for (int c = 0; c < CATEGORY_BYTES.length; c++) {
+            byte[] expected = CATEGORY_BYTES[c];
+            if (expected.length != length) {
+                continue;
+            }
+            int i = 0;
+            while (i < length && byteAt(start + i) == expected[i]) {
+                i++;
+            }
+            if (i == length) {
+                return CATEGORIES[c];
+            }
+        }
+        return decode(start, length);
+    }
+
+    /**
+     * Convert a text timestamp to millis, reading the digits in place
+     * Unparseable timestamps give BMIRecord.INVALID_TIME, as for BMIRecord
+     */
+    private long parseTimestamp() {
+        if (timestampLength == TIMESTAMP_LENGTH) {
+            int s = timestampStart;
+            int day = digits(s, 2);
+            int month = digits(s + 3, 2);
+            int year = digits(s + 6, 4);
+            int hour = digits(s + 11, 2);
+            int minute = digits(s + 14, 2);
+            int second = digits(s + 17, 2);
+            if (day >= 0 && month >= 0 && year >= 0 && hour >= 0 && minute >= 0 && second >= 0) {
+                try {
+                    return Timestamps.toMillis(year, month, day, hour, minute, second);
+                } catch (DateTimeException e) {
+                    return FileManager.BMIRecord.INVALID_TIME;
+                }
+            }
+        }
+
+        try {
+            return Timestamps.parse(decode(timestampStart, timestampLength));
+        } catch (DateTimeException e) {
+            return FileManager.BMIRecord.INVALID_TIME;
+        }
+    }
+
+    /**
+     * Byte at a file offset, refilling the window if it is not in it
+     */
+    private byte byteAt(int offset) {
+        int at = offset - windowStart;
+        if (at < 0 || at >= windowLength) {
+            at = load(offset, 1);
+        }
+        return window[at];
+    }
+
+    /**
+     * Offset of the newline ending the line that starts at a file offset, or
+     * the file size for an unterminated last line
+     * A line running past the window is re-read from its start, so the whole
+     * line is in the window when it is parsed.
+     */
+    private int findLineEnd(int start) {
+        int at = load(start, 1);
+        while (true) {
+            while (at < windowLength && window[at] != '\n') {
+                at++;
+            }
+            if (at < windowLength || windowStart + windowLength == size) {
+                return windowStart + at;
+            }
+            if (start == windowStart) {
+                // Longer than the whole window; finish byte by byte
+                int end = windowStart + windowLength;
+                while (end < size && byteAt(end) != '\n') {
+                    end++;
+                }
+                return end;
+            }
+            fill(start);
+            at = start - windowStart;
+        }
+    }
+
+    /**
+     * Make sure length bytes from a file offset are in the window
+     * A window moving backwards (as in tail) is filled to end at the offset,
+     * one moving forwards to start at it.
+     * @return Index of the offset in the window
+     */
+    private int load(int offset, int length) {
+        if (offset < windowStart || offset + length > windowStart + windowLength) {
+            fill(offset < windowStart ? offset + length - window.length : offset);
+        }
+        return offset - windowStart;
+    }
+
+    /**
+     * Read a full window starting at a file offset, moved back if it would
+     * run past the end of the file
+     */
+    private void fill(int offset) {
+        int start = Math.max(0, Math.min(offset, size - window.length));
+        try {
+            file.seek(start);
+            file.readFully(window);
+        } catch (IOException e) {
+            windowLength = 0;
+            throw new UncheckedIOException(e);
+        }
+        windowStart = start;
+        windowLength = window.length;
+    }
+
+    private int digits(int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            byte b = byteAt(i);
+            if (b < '0' || b > '9') {
+                return -1;
+            }
+            value = value * 10 + (b - '0');
+        }
+        return value;
+    }
+
+    private String decode(int start, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = byteAt(start + i);
+        }
+        return new String(bytes);
+    }
+}
@@ -0,0 +1,92 @@
+/**
+ * RecordMigrator.java - One-shot conversion of text record files to another backend
+ * Usage: java RecordMigrator [--backend binary|kv]
+ * Every <name>_records.txt in the data directory is copied into the backend
+ * (binary by default: one <name>_records.bin per user). The kv backend also
+ * takes over the users from users.txt, keeping their registration dates.
+ * The text files are kept so the text backend keeps working
+ */
+
+import java.io.File;
+
+public class RecordMigrator {
+    private static final String TEXT_EXTENSION = TextRecordStore.RECORDS_EXTENSION;
+
+    public static void main(String[] args) {
+        StorageConfig.Backend backend = StorageConfig.Backend.BINARY;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--backend") && i + 1 < args.length) {
+                backend = StorageConfig.Backend.forName(args[++i]);
+            } else {
+                System.out.println("Usage: java RecordMigrator [--backend binary|kv]");
+                return;
+            }
+        }
+        if (!backend.migratesText()) {
+            System.out.println("Cannot migrate into the " + backend.name().toLowerCase() + " backend");
+            return;
+        }
+
+        StorageConfig config = StorageConfig.fromEnvironment().withBackend(backend);
+        File directory = config.getDataDirectory();
+        File[] files = directory.listFiles((dir, fileName) -> fileName.endsWith(TEXT_EXTENSION));
+        if (files == null) {
+            System.out.println("Data directory not found: " + directory);
+            return;
+        }
+
+        FileManager fileManager = new FileManager(config);
+        RecordStore store = fileManager.getRecordStore();
+
+        // Backends with their own user store start out without any users
+        if (backend == StorageConfig.Backend.KV) {
+            UserRegistry registry = new UserRegistry(new File(directory, "users.txt"));
+            int copied = 0;
+            for (String name : registry.getUserNames()) {
+                if (fileManager.getUserDetails(name) == null && fileManager.importUser(registry.getUser(name))) {
+                    copied++;
+                }
+            }
+            registry.close();
+            System.out.println("Copied " + copied + " user(s)");
+        }
+
+        int migrated = 0;
+        int failed = 0;
+        long textBytes = 0;
+        long migratedBytes = 0;
+
+        for (File file : files) {
+            String fileName = file.getName();
+            String name = fileName.substring(0, fileName.length() - TEXT_EXTENSION.length());
+            if (store.exists(name)) {
+                System.out.println("Skipped (already migrated): " + name);
+                continue;
+            }
+            if (fileManager.migrateRecords(name)) {
+                migrated++;
+                textBytes += file.length();
+                File migratedFile = store.getRecordFile(name);
+                if (migratedFile != null) {
+                    migratedBytes += migratedFile.length();
+                }
+                System.out.println("Migrated: " + name);
+            } else {
+                failed++;
+                System.out.println("Failed: " + name);
+            }
+        }
+
+        if (store instanceof KeyValueStore) {
+            migratedBytes = ((KeyValueStore) store).getLogSize();
+        }
+        long skipped = fileManager.getSkippedInvalidRecords();
+        fileManager.close();
+        System.out.println("\nMigrated " + migrated + " user(s), " + failed + " failure(s)");
+        if (skipped > 0) {
+            System.out.println("Skipped " + skipped + " record(s) with an invalid timestamp");
+        }
+        System.out.println("Text size: " + textBytes + " bytes, " + backend.name().toLowerCase() +
+                           " size: " + migratedBytes + " bytes");
+    }
+}
@@ -0,0 +1,90 @@
+/**
+ * RecordPager.java - Page-at-a-time access to a user's records
+ * Records files are paged through their sparse time index: opening reads the
+ * saved index (scanning only rows appended since it was saved) and a page
+ * starts reading at the index block holding its first row. Other backends
+ * know their row count and seek directly. Pages are decoded only when asked
+ * for, so memory use does not grow with history length.
+ */
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+
+public class RecordPager implements Closeable {
+    public static final int PAGE_SIZE = 500;
+
+    private final RecordCursor reader;
+    private final int rowCount;
+
+    // Block offsets of the records file, or null for cursors that seek themselves
+    private final TimeIndex index;
+
+    private RecordPager(RecordCursor reader, int rowCount, TimeIndex index) {
+        this.reader = reader;
+        this.rowCount = rowCount;
+        this.index = index;
+    }
+
+    /**
+     * Page over a records file reader and its time index; the pager then owns the reader
+     */
+    public static RecordPager open(RecordFileReader reader, TimeIndex index) {
+        return new RecordPager(reader, (int) Math.min(index.countRows(reader), Integer.MAX_VALUE), index);
+    }
+
+    /**
+     * Page over an open cursor, which the pager then owns
+     * Cursors with an unknown row count must be paged through a time index instead
+     */
+    public static RecordPager open(RecordCursor cursor) {
+        if (cursor.getRecordCount() < 0) {
+            throw new IllegalArgumentException("Cannot page a cursor without a row count");
+        }
+        return new RecordPager(cursor, (int) Math.min(cursor.getRecordCount(), Integer.MAX_VALUE), null);
+    }
+
+    /**
+     * Get total number of records
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Get number of pages
+     */
+    public int getPageCount() {
+        return (rowCount + PAGE_SIZE - 1) / PAGE_SIZE;
+    }
+
+    /**
+     * Decode one page of records
+     * @param page Zero-based page number
+     */
+    public synchronized ArrayList<FileManager.BMIRecord> getPage(int page) {
+        if (page < 0 || page >= getPageCount()) {
+            throw new IndexOutOfBoundsException("Page " + page + " of " + getPageCount());
+        }
+
+        int firstRow = page * PAGE_SIZE;
+        int rows = Math.min(PAGE_SIZE, rowCount - firstRow);
+        ArrayList<FileManager.BMIRecord> records = new ArrayList<>(rows);
+
+        if (index == null) {
+            reader.seek(firstRow);
+            records.add(reader.toRecord());
+        } else {
+            index.skipTo((RecordFileReader) reader, firstRow);
+        }
+        while (records.size() < rows && reader.next()) {
+            records.add(reader.toRecord());
+        }
+        return records;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,64 @@
+/**
+ * RecordStore.java - Storage backend for users' BMI record histories
+ * FileManager adds locking, statistics summaries, time indexes and reports
+ * on top; a backend only stores and returns each user's rows in order.
+ * Callers hold the user's lock, so implementations need no locking of
+ * their own beyond keeping different users independent.
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public interface RecordStore {
+    /**
+     * Check whether a user has any stored history
+     */
+    boolean exists(String name);
+
+    /**
+     * Append records to the end of a user's history
+     */
+    void append(String name, List<FileManager.BMIRecord> records) throws IOException;
+
+    /**
+     * Read a user's whole history, oldest first
+     */
+    ArrayList<FileManager.BMIRecord> readRecords(String name) throws IOException;
+
+    /**
+     * Open a cursor over a user's history; a user without records gives an empty cursor
+     */
+    RecordCursor openCursor(String name) throws IOException;
+
+    /**
+     * Read the last records of a user's history without reading the rest of it
+     * @param count Maximum number of records
+     * @return up to count records, oldest first
+     */
+    ArrayList<FileManager.BMIRecord> readLastRecords(String name, int count) throws IOException;
+
+    /**
+     * Number of records in a user's history
+     */
+    long countRecords(String name) throws IOException;
+
+    /**
+     * Delete a user's history
+     * @return true if there was anything to delete
+     */
+    boolean delete(String name);
+
+    /**
+     * Get the file holding a user's records, or null if the backend is not file based
+     * Time indexes and statistics summaries are only kept for file based backends.
+     */
+    File getRecordFile(String name);
+
+    /**
+     * Flush pending changes and release open files; file-per-user backends hold none
+     */
+    default void close() {
+    }
+}
@@ -0,0 +1,102 @@
+/**
+ * RecordTableModel.java - Lazy table model over a RecordPager
+ * Only the pages currently on screen are decoded. Pages are loaded in the
+ * background and a small number of recent pages is kept in memory.
+ */
+
+import javax.swing.SwingUtilities;
+import javax.swing.table.AbstractTableModel;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class RecordTableModel extends AbstractTableModel {
+    private static final long serialVersionUID = 1L;
+
+    private static final String[] COLUMNS = {
+        "#", "Date", "Weight (kg)", "Height (cm)", "BMI", "Category"
+    };
+    private static final int CACHED_PAGES = 8;
+
+    private final RecordPager pager;
+    private final FileManagerService service;
+
+    // Most recently used pages, evicted in access order
+    private final LinkedHashMap<Integer, ArrayList<FileManager.BMIRecord>> pages =
+        new LinkedHashMap<Integer, ArrayList<FileManager.BMIRecord>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, ArrayList<FileManager.BMIRecord>> eldest) {
+                return size() > CACHED_PAGES;
+            }
+        };
+    private final HashSet<Integer> loading = new HashSet<>();
+
+    /**
+     * Constructor
+     * @param pager Source of record pages
+     * @param service Background service used to load pages off the event thread
+     */
+    public RecordTableModel(RecordPager pager, FileManagerService service) {
+        this.pager = pager;
+        this.service = service;
+    }
+
+    @Override
+    public int getRowCount() {
+        return pager.getRowCount();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMNS[column];
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        if (column == 0) {
+            return row + 1;
+        }
+
+        int page = row / RecordPager.PAGE_SIZE;
+        ArrayList<FileManager.BMIRecord> records = pages.get(page);
+        if (records == null) {
+            requestPage(page);
+            return column == 1 ? "Loading..." : "";
+        }
+
+        FileManager.BMIRecord record = records.get(row % RecordPager.PAGE_SIZE);
+        switch (column) {
+            case 1: return record.getTimestamp();
+            case 2: return String.format("%.1f", record.getWeight());
+            case 3: return String.format("%.1f", record.getHeight());
+            case 4: return String.format("%.2f", record.getBmi());
+            default: return record.getCategory();
+        }
+    }
+
+    /**
+     * Load a page in the background and repaint its rows when it arrives
+     */
+    private void requestPage(int page) {
+        if (!loading.add(page)) {
+            return;
+        }
+        service.submit(null, () -> pager.getPage(page)).whenComplete((records, error) ->
+            SwingUtilities.invokeLater(() -> {
+                loading.remove(page);
+                if (error != null) {
+                    error.printStackTrace();
+                    return;
+                }
+                pages.put(page, records);
+                int firstRow = page * RecordPager.PAGE_SIZE;
+                fireTableRowsUpdated(firstRow, firstRow + records.size() - 1);
+            }));
+    }
+}
@@ -0,0 +1,362 @@
+/**
+ * ReportWriter.java - Streaming user report export in text, CSV or JSON
+ * Rows are rendered straight from a record cursor through templates that are
+ * parsed once, into a large reusable buffer, so a report of any size is
+ * written in constant memory with no per-record String.format calls.
+ *
+ * Templates are plain text with ${field} placeholders. The header and footer
+ * may use the user and statistics fields (name, age, gender, since, total,
+ * avgBMI, minBMI, maxBMI, minWeight, maxWeight, generated); the record
+ * template may use index, timestamp, weight, height, bmi and category.
+ * A "\n" in a template is written as the platform line separator.
+ * Text reports format numbers for the default locale, as they always have;
+ * CSV and JSON always use a '.' decimal point.
+ */
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.text.DecimalFormatSymbols;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+public class ReportWriter implements Closeable {
+    private static final int BUFFER_SIZE = 256 * 1024;
+    private static final String RULE = "------------------------------------------------";
+    private static final String DOUBLE_RULE = "================================================";
+
+    /**
+     * Output formats with their default layouts
+     */
+    public enum Format {
+        TEXT(".txt", new Layout(
+                DOUBLE_RULE + "\n" +
+                "        BMI TRACKER - USER REPORT\n" +
+                DOUBLE_RULE + "\n\n" +
+                "User Information:\n" +
+                "  Name: ${name}\n" +
+                "  Age: ${age}\n" +
+                "  Gender: ${gender}\n" +
+                "  Member Since: ${since}\n\n" +
+                "Statistics:\n" +
+                "  Total Records: ${total}\n" +
+                "  Average BMI: ${avgBMI}\n" +
+                "  BMI Range: ${minBMI} - ${maxBMI}\n" +
+                "  Weight Range: ${minWeight} - ${maxWeight} kg\n\n" +
+                "BMI Records History:\n" +
+                RULE + "\n",
+                "Record #${index}\n" +
+                "  Date: ${timestamp}\n" +
+                "  Weight: ${weight} kg\n" +
+                "  Height: ${height} cm\n" +
+                "  BMI: ${bmi}\n" +
+                "  Category: ${category}\n" +
+                RULE + "\n",
+                "",
+                "\nReport generated on: ${generated}\n")),
+
+        CSV(".csv", new Layout(
+                "timestamp,weight,height,bmi,category\n",
+                "${timestamp},${weight},${height},${bmi},${category}\n",
+                "",
+                "")),
+
+        JSON(".json", new Layout(
+                "{\"name\":${name},\"age\":${age},\"gender\":${gender},\"memberSince\":${since},\n" +
+                "\"statistics\":{\"totalRecords\":${total},\"averageBMI\":${avgBMI}," +
+                "\"minBMI\":${minBMI},\"maxBMI\":${maxBMI}," +
+                "\"minWeight\":${minWeight},\"maxWeight\":${maxWeight}},\n" +
+                "\"records\":[\n",
+                "{\"timestamp\":${timestamp},\"weight\":${weight},\"height\":${height}," +
+                "\"bmi\":${bmi},\"category\":${category}}",
+                ",\n",
+                "\n],\"generated\":${generated}}\n"));
+
+        private final String extension;
+        private final Layout layout;
+
+        Format(String extension, Layout layout) {
+            this.extension = extension;
+            this.layout = layout;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+
+        public Layout getLayout() {
+            return layout;
+        }
+
+        /**
+         * Pick the format matching a file name's extension, defaulting to text
+         */
+        public static Format forFileName(String fileName) {
+            String lower = fileName.toLowerCase();
+            for (Format format : values()) {
+                if (lower.endsWith(format.extension)) {
+                    return format;
+                }
+            }
+            return TEXT;
+        }
+    }
+
+    /**
+     * Compiled header, record, record separator and footer templates
+     */
+    public static class Layout {
+        private final Template header;
+        private final Template record;
+        private final Template separator;
+        private final Template footer;
+
+        public Layout(String header, String record, String separator, String footer) {
+            this.header = Template.compile(header, false);
+            this.record = Template.compile(record, true);
+            this.separator = Template.compile(separator, false);
+            this.footer = Template.compile(footer, false);
+        }
+    }
+
+    // Record fields, resolved to codes when a template is compiled
+    private static final String[] RECORD_FIELDS = {"index", "timestamp", "weight", "height", "bmi", "category"};
+    private static final int INDEX = 0, TIMESTAMP = 1, WEIGHT = 2, HEIGHT = 3, BMI = 4, CATEGORY = 5;
+
+    /**
+     * Template split once into literal text and field references
+     */
+    private static class Template {
+        final String[] literals; // literals[i] precedes fields[i]; one extra literal at the end
+        final String[] names;
+        final int[] codes;
+
+        private Template(List<String> literals, List<String> names, int[] codes) {
+            this.literals = literals.toArray(new String[0]);
+            this.names = names.toArray(new String[0]);
+            this.codes = codes;
+        }
+
+        static Template compile(String text, boolean recordFields) {
+            List<String> literals = new ArrayList<>();
+            List<String> names = new ArrayList<>();
+            int position = 0;
+            int start;
+            while ((start = text.indexOf("${", position)) >= 0) {
+                int end = text.indexOf('}', start);
+                if (end < 0) {
+                    throw new IllegalArgumentException("Unclosed field in template: " + text.substring(start));
+                }
+                literals.add(toLineSeparators(text.substring(position, start)));
+                names.add(text.substring(start + 2, end));
+                position = end + 1;
+            }
+            literals.add(toLineSeparators(text.substring(position)));
+
+            int[] codes = new int[names.size()];
+            for (int i = 0; i < codes.length; i++) {
+                codes[i] = -1;
+                for (int field = 0; field < RECORD_FIELDS.length; field++) {
+                    if (RECORD_FIELDS[field].equals(names.get(i))) {
+                        codes[i] = field;
+                    }
+                }
+                if (recordFields && codes[i] < 0) {
+                    throw new IllegalArgumentException("Unknown record field: " + names.get(i));
+                }
+            }
+            return new Template(literals, names, codes);
+        }
+
+        private static String toLineSeparators(String literal) {
+            return literal.replace("\n", System.lineSeparator());
+        }
+    }
+
+    private final Writer out;
+    private final Format format;
+    private final Layout layout;
+    private final Locale locale;
+    private final char decimalPoint;
+    private final StringBuilder buffer = new StringBuilder(BUFFER_SIZE + 4096);
+    private char[] chars = new char[BUFFER_SIZE + 4096];
+    private long records;
+
+    /**
+     * Constructor
+     * @param out Destination; closed with this writer
+     * @param format Format used for escaping values
+     * @param layout Templates to render, e.g. format.getLayout()
+     */
+    public ReportWriter(Writer out, Format format, Layout layout) {
+        this.out = out;
+        this.format = format;
+        this.layout = layout;
+        this.locale = format == Format.TEXT ? Locale.getDefault() : Locale.ROOT;
+        this.decimalPoint = DecimalFormatSymbols.getInstance(locale).getDecimalSeparator();
+    }
+
+    /**
+     * Open a report file in the platform charset, as the text reports always were
+     */
+    public static ReportWriter open(File file, Format format) throws IOException {
+        return new ReportWriter(new OutputStreamWriter(new FileOutputStream(file), Charset.defaultCharset()),
+                               format, format.getLayout());
+    }
+
+    /**
+     * Write the header from the user's details and statistics
+     */
+    public void writeHeader(FileManager.UserDetails user, FileManager.BMIStatistics stats) throws IOException {
+        Map<String, String> values = new HashMap<>();
+        values.put("name", text(user.getName()));
+        values.put("age", Integer.toString(user.getAge()));
+        values.put("gender", text(user.getGender()));
+        values.put("since", text(user.getCreatedAt()));
+        values.put("total", Integer.toString(stats.getTotalRecords()));
+        values.put("avgBMI", String.format(locale, "%.2f", stats.getAvgBMI()));
+        values.put("minBMI", String.format(locale, "%.2f", stats.getMinBMI()));
+        values.put("maxBMI", String.format(locale, "%.2f", stats.getMaxBMI()));
+        values.put("minWeight", String.format(locale, "%.1f", stats.getMinWeight()));
+        values.put("maxWeight", String.format(locale, "%.1f", stats.getMaxWeight()));
+        render(layout.header, values);
+    }
+
+    /**
+     * Write the cursor's current row
+     */
+    public void writeRecord(RecordCursor reader) throws IOException {
+        if (records > 0) {
+            render(layout.separator, null);
+        }
+        records++;
+
+        Template template = layout.record;
+        for (int i = 0; i < template.codes.length; i++) {
+            buffer.append(template.literals[i]);
+            switch (template.codes[i]) {
+                case INDEX: buffer.append(records); break;
+                case TIMESTAMP: appendText(buffer, reader.getTimestamp()); break;
+                case WEIGHT: buffer.append(reader.getWeight()); break;
+                case HEIGHT: buffer.append(reader.getHeight()); break;
+                case BMI: appendTwoDecimals(reader.getBmi()); break;
+                case CATEGORY: appendText(buffer, reader.getCategory()); break;
+                default: break;
+            }
+        }
+        buffer.append(template.literals[template.codes.length]);
+        if (buffer.length() >= BUFFER_SIZE) {
+            drain();
+        }
+    }
+
+    /**
+     * Write the footer
+     */
+    public void writeFooter() throws IOException {
+        Map<String, String> values = new HashMap<>();
+        values.put("generated", text(Timestamps.format(Timestamps.now())));
+        render(layout.footer, values);
+    }
+
+    /**
+     * Number of records written so far
+     */
+    public long getRecordCount() {
+        return records;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            drain();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void render(Template template, Map<String, String> values) throws IOException {
+        for (int i = 0; i < template.names.length; i++) {
+            buffer.append(template.literals[i]);
+            String value = values != null ? values.get(template.names[i]) : null;
+            buffer.append(value != null ? value : "");
+        }
+        buffer.append(template.literals[template.names.length]);
+        if (buffer.length() >= BUFFER_SIZE) {
+            drain();
+        }
+    }
+
+    private void drain() throws IOException {
+        int length = buffer.length();
+        if (length > chars.length) {
+            chars = new char[length]; // a single oversized header or row
+        }
+        buffer.getChars(0, length, chars, 0);
+        out.write(chars, 0, length);
+        buffer.setLength(0);
+    }
+
+    /**
+     * Same digits as String.format("%.2f") for values already stored at two
+     * decimals, which is every BMI the tracker writes; anything else falls back
+     */
+    private void appendTwoDecimals(double value) {
+        double scaled = value * 100;
+        long hundredths = Math.round(scaled);
+        if (Math.abs(scaled - hundredths) > 1e-6 || Math.abs(value) >= 1e13) {
+            buffer.append(String.format(locale, "%.2f", value));
+            return;
+        }
+        if (hundredths < 0) {
+            buffer.append('-');
+            hundredths = -hundredths;
+        }
+        long cents = hundredths % 100;
+        buffer.append(hundredths / 100).append(decimalPoint).append((char) ('0' + cents / 10)).append((char) ('0' + cents % 10));
+    }
+
+    /**
+     * Escape a string value for the output format
+     */
+    private String text(String value) {
+        StringBuilder escaped = new StringBuilder();
+        appendText(escaped, value);
+        return escaped.toString();
+    }
+
+    private void appendText(StringBuilder target, String value) {
+        if (value == null) {
+            value = "";
+        }
+        switch (format) {
+            case JSON:
+                target.append('"');
+                for (int i = 0; i < value.length(); i++) {
+                    char c = value.charAt(i);
+                    if (c == '"' || c == '\\') {
+                        target.append('\\').append(c);
+                    } else if (c < 0x20) {
+                        target.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        target.append(c);
+                    }
+                }
+                target.append('"');
+                break;
+            case CSV:
+                if (value.indexOf(',') >= 0 || value.indexOf('"') >= 0 ||
+                    value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0) {
+                    target.append('"').append(value.replace("\"", "\"\"")).append('"');
+                } else {
+                    target.append(value);
+                }
+                break;
+            default:
+                target.append(value);
+                break;
+        }
+    }
+}
@@ -0,0 +1,208 @@
+/**
+ * StatisticsAccumulator.java - Single-pass BMI statistics
+ * Records are fed in one at a time, so statistics can be computed while
+ * streaming over a records file without keeping the rows in memory.
+ * The running state can be saved and restored, so it can be kept up to
+ * date on every append instead of being recomputed.
+ */
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+public class StatisticsAccumulator {
+    // Median sketch: BMI histogram with 0.01 wide bins (the precision BMIs are stored at)
+    private static final int BINS_PER_UNIT = 100;
+    private static final int BIN_COUNT = 100 * BINS_PER_UNIT;
+
+    private int count = 0;
+    private double totalBMI = 0;
+    private double mean = 0;
+    private double squaredDiffs = 0; // Welford's running sum of squared differences
+    private double minBMI = Double.POSITIVE_INFINITY;
+    private double maxBMI = Double.NEGATIVE_INFINITY;
+    private double minWeight = Double.POSITIVE_INFINITY;
+    private double maxWeight = Double.NEGATIVE_INFINITY;
+    private double firstBMI, lastBMI;
+    private double firstWeight, lastWeight;
+    private final int[] histogram = new int[BIN_COUNT];
+
+    /**
+     * Add one record
+     */
+    public void add(double weight, double bmi) {
+        if (count == 0) {
+            firstBMI = bmi;
+            firstWeight = weight;
+        }
+        lastBMI = bmi;
+        lastWeight = weight;
+
+        count++;
+        totalBMI += bmi;
+        double delta = bmi - mean;
+        mean += delta / count;
+        squaredDiffs += delta * (bmi - mean);
+
+        minBMI = Math.min(minBMI, bmi);
+        maxBMI = Math.max(maxBMI, bmi);
+        minWeight = Math.min(minWeight, weight);
+        maxWeight = Math.max(maxWeight, weight);
+
+        histogram[toBin(bmi)]++;
+    }
+
+    /**
+     * Fold in another accumulator, as if its records were added after these
+     * Means and variances are combined exactly (Chan et al.), so partial
+     * results computed in parallel merge to the same statistics.
+     */
+    public void merge(StatisticsAccumulator other) {
+        if (other.count == 0) {
+            return;
+        }
+        if (count == 0) {
+            firstBMI = other.firstBMI;
+            firstWeight = other.firstWeight;
+        }
+        lastBMI = other.lastBMI;
+        lastWeight = other.lastWeight;
+
+        long total = (long) count + other.count;
+        double delta = other.mean - mean;
+        mean += delta * other.count / total;
+        squaredDiffs += other.squaredDiffs + delta * delta * ((double) count * other.count / total);
+        count = (int) total;
+        totalBMI += other.totalBMI;
+
+        minBMI = Math.min(minBMI, other.minBMI);
+        maxBMI = Math.max(maxBMI, other.maxBMI);
+        minWeight = Math.min(minWeight, other.minWeight);
+        maxWeight = Math.max(maxWeight, other.maxWeight);
+
+        for (int bin = 0; bin < BIN_COUNT; bin++) {
+            histogram[bin] += other.histogram[bin];
+        }
+    }
+
+    /**
+     * Get number of records added so far
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Build the statistics, or null if no records were added
+     */
+    public FileManager.BMIStatistics toStatistics() {
+        if (count == 0) {
+            return null;
+        }
+        double stdDev = count > 1 ? Math.sqrt(squaredDiffs / count) : 0;
+        return new FileManager.BMIStatistics(count, totalBMI / count, minBMI, maxBMI,
+                minWeight, maxWeight, stdDev, median(), firstBMI, lastBMI, firstWeight, lastWeight);
+    }
+
+    /**
+     * Median BMI read from the histogram
+     * Exact for BMIs rounded to two decimals within 0-100
+     */
+    private double median() {
+        int lowerRank = (count - 1) / 2;
+        int upperRank = count / 2;
+        double lower = valueAtRank(lowerRank);
+        double upper = upperRank == lowerRank ? lower : valueAtRank(upperRank);
+        return (lower + upper) / 2;
+    }
+
+    private double valueAtRank(int rank) {
+        int seen = 0;
+        for (int bin = 0; bin < BIN_COUNT; bin++) {
+            seen += histogram[bin];
+            if (seen > rank) {
+                // Clamped outliers report the observed extreme instead of the edge bin
+                if (bin == 0) {
+                    return minBMI;
+                }
+                if (bin == BIN_COUNT - 1) {
+                    return maxBMI;
+                }
+                return (double) bin / BINS_PER_UNIT;
+            }
+        }
+        return maxBMI;
+    }
+
+    /**
+     * Save the running state; the histogram is stored sparsely
+     */
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(count);
+        out.writeDouble(totalBMI);
+        out.writeDouble(mean);
+        out.writeDouble(squaredDiffs);
+        out.writeDouble(minBMI);
+        out.writeDouble(maxBMI);
+        out.writeDouble(minWeight);
+        out.writeDouble(maxWeight);
+        out.writeDouble(firstBMI);
+        out.writeDouble(lastBMI);
+        out.writeDouble(firstWeight);
+        out.writeDouble(lastWeight);
+
+        int usedBins = 0;
+        for (int bin = 0; bin < BIN_COUNT; bin++) {
+            if (histogram[bin] != 0) {
+                usedBins++;
+            }
+        }
+        out.writeInt(usedBins);
+        for (int bin = 0; bin < BIN_COUNT; bin++) {
+            if (histogram[bin] != 0) {
+                out.writeShort(bin);
+                out.writeInt(histogram[bin]);
+            }
+        }
+    }
+
+    /**
+     * Restore state saved by writeTo
+     */
+    public static StatisticsAccumulator readFrom(DataInputStream in) throws IOException {
+        StatisticsAccumulator accumulator = new StatisticsAccumulator();
+        accumulator.count = in.readInt();
+        accumulator.totalBMI = in.readDouble();
+        accumulator.mean = in.readDouble();
+        accumulator.squaredDiffs = in.readDouble();
+        accumulator.minBMI = in.readDouble();
+        accumulator.maxBMI = in.readDouble();
+        accumulator.minWeight = in.readDouble();
+        accumulator.maxWeight = in.readDouble();
+        accumulator.firstBMI = in.readDouble();
+        accumulator.lastBMI = in.readDouble();
+        accumulator.firstWeight = in.readDouble();
+        accumulator.lastWeight = in.readDouble();
+
+        int usedBins = in.readInt();
+        for (int i = 0; i < usedBins; i++) {
+            int bin = in.readUnsignedShort();
+            if (bin >= BIN_COUNT) {
+                throw new IOException("Invalid histogram bin: " + bin);
+            }
+            accumulator.histogram[bin] = in.readInt();
+        }
+        return accumulator;
+    }
+
+    private static int toBin(double bmi) {
+        long bin = Math.round(bmi * BINS_PER_UNIT);
+        if (bin < 0) {
+            return 0;
+        }
+        if (bin >= BIN_COUNT) {
+            return BIN_COUNT - 1;
+        }
+        return (int) bin;
+    }
+}
@@ -0,0 +1,187 @@
+/**
+ * StorageConfig.java - Where and how the tracker stores its data
+ * The data directory and storage backend are chosen at startup from, in order:
+ *   1. system properties  -Dbmitracker.dataDir=...  -Dbmitracker.storage=text|binary|kv|memory
+ *                         -Dbmitracker.cacheMB=n
+ *   2. environment        BMITRACKER_DATA_DIR       BMITRACKER_STORAGE   BMITRACKER_CACHE_MB
+ *   3. defaults           C:\yomp on Windows, ~/yomp elsewhere; text records; 64 MB cache
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Locale;
+
+public class StorageConfig {
+    public static final String DIRECTORY_PROPERTY = "bmitracker.dataDir";
+    public static final String DIRECTORY_ENV = "BMITRACKER_DATA_DIR";
+    public static final String BACKEND_PROPERTY = "bmitracker.storage";
+    public static final String BACKEND_ENV = "BMITRACKER_STORAGE";
+    public static final String CACHE_PROPERTY = "bmitracker.cacheMB";
+    public static final String CACHE_ENV = "BMITRACKER_CACHE_MB";
+    public static final long DEFAULT_CACHE_BYTES = 64L * 1024 * 1024;
+
+    private static final String USER_FILE = "users.txt";
+
+    /**
+     * Available storage backends
+     */
+    public enum Backend {
+        TEXT(false),   // <name>_records.txt, the original format
+        BINARY(true),  // <name>_records.bin, fixed-width rows
+        KV(true),      // users and records in one log-structured file, bmi.kv
+        MEMORY(false); // heap only, nothing persisted
+
+        private final boolean migratesText;
+
+        Backend(boolean migratesText) {
+            this.migratesText = migratesText;
+        }
+
+        /**
+         * Whether existing text histories are read until a user's first append
+         * moves them into this backend
+         */
+        public boolean migratesText() {
+            return migratesText;
+        }
+
+        /**
+         * Look up a backend by name, ignoring case
+         */
+        public static Backend forName(String name) {
+            try {
+                return valueOf(name.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown storage backend: " + name);
+            }
+        }
+    }
+
+    private final File dataDirectory;
+    private final Backend backend;
+    private final long recordCacheBytes;
+
+    /**
+     * Constructor - Uses the default record cache size
+     * @param dataDirectory Directory for user, record and report files
+     * @param backend Storage backend for users and records
+     */
+    public StorageConfig(File dataDirectory, Backend backend) {
+        this(dataDirectory, backend, DEFAULT_CACHE_BYTES);
+    }
+
+    /**
+     * Constructor
+     * @param recordCacheBytes Budget of the parsed record cache; 0 disables it
+     */
+    public StorageConfig(File dataDirectory, Backend backend, long recordCacheBytes) {
+        this.dataDirectory = dataDirectory;
+        this.backend = backend;
+        this.recordCacheBytes = recordCacheBytes;
+    }
+
+    /**
+     * Read the configuration from system properties and the environment
+     */
+    public static StorageConfig fromEnvironment() {
+        String directory = setting(DIRECTORY_PROPERTY, DIRECTORY_ENV);
+        String backend = setting(BACKEND_PROPERTY, BACKEND_ENV);
+        String cacheMB = setting(CACHE_PROPERTY, CACHE_ENV);
+        long cacheBytes = DEFAULT_CACHE_BYTES;
+        if (cacheMB != null) {
+            try {
+                cacheBytes = Math.max(0, Long.parseLong(cacheMB)) * 1024 * 1024;
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid record cache size: " + cacheMB);
+            }
+        }
+        return new StorageConfig(directory != null ? new File(directory) : getDefaultDataDirectory(),
+                                 backend != null ? Backend.forName(backend) : Backend.TEXT,
+                                 cacheBytes);
+    }
+
+    /**
+     * Default data directory: C:\yomp on Windows, as it always was, else ~/yomp
+     */
+    public static File getDefaultDataDirectory() {
+        if (System.getProperty("os.name", "").startsWith("Windows")) {
+            return new File("C:\\yomp");
+        }
+        return new File(System.getProperty("user.home"), "yomp");
+    }
+
+    /**
+     * Same directory with another backend
+     */
+    public StorageConfig withBackend(Backend backend) {
+        return new StorageConfig(dataDirectory, backend, recordCacheBytes);
+    }
+
+    /**
+     * Same settings with another record cache budget
+     */
+    public StorageConfig withRecordCacheBytes(long recordCacheBytes) {
+        return new StorageConfig(dataDirectory, backend, recordCacheBytes);
+    }
+
+    public File getDataDirectory() {
+        return dataDirectory;
+    }
+
+    public Backend getBackend() {
+        return backend;
+    }
+
+    public long getRecordCacheBytes() {
+        return recordCacheBytes;
+    }
+
+    /**
+     * Create the record store for the configured backend
+     */
+    public RecordStore createRecordStore() {
+        switch (backend) {
+            case BINARY:
+                return new BinaryRecordStore(dataDirectory);
+            case KV:
+                try {
+                    return new KeyValueStore(dataDirectory);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Cannot open key-value store in " + dataDirectory, e);
+                }
+            case MEMORY:
+                return new InMemoryRecordStore();
+            default:
+                return new TextRecordStore(dataDirectory);
+        }
+    }
+
+    /**
+     * Create the user store for the configured backend
+     * @param recordStore Store from createRecordStore(); the kv backend keeps users in it too
+     */
+    public UserStore createUserStore(RecordStore recordStore) {
+        switch (backend) {
+            case KV:
+                return (KeyValueStore) recordStore;
+            case MEMORY:
+                return new InMemoryUserStore();
+            default:
+                return new UserRegistry(new File(dataDirectory, USER_FILE));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return dataDirectory.getAbsolutePath() + " (" + backend.name().toLowerCase(Locale.ROOT) + ")";
+    }
+
+    private static String setting(String property, String env) {
+        String value = System.getProperty(property);
+        if (value == null || value.trim().isEmpty()) {
+            value = System.getenv(env);
+        }
+        return value == null || value.trim().isEmpty() ? null : value.trim();
+    }
+}
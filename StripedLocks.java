@@ -0,0 +1,33 @@
+/**
+ * StripedLocks.java - Fixed pool of read/write locks shared out by key
+ * Each user name maps to one of a fixed number of locks, so memory stays
+ * constant no matter how many users there are. Different users only
+ * contend when their names land on the same stripe.
+ */
+
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+public class StripedLocks {
+    private final ReentrantReadWriteLock[] stripes;
+
+    /**
+     * Constructor
+     * @param stripeCount Number of locks; rounded up to a power of two
+     */
+    public StripedLocks(int stripeCount) {
+        int size = Integer.highestOneBit(Math.max(1, stripeCount - 1)) << 1;
+        stripes = new ReentrantReadWriteLock[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new ReentrantReadWriteLock();
+        }
+    }
+
+    /**
+     * Get the lock guarding a key
+     */
+    public ReentrantReadWriteLock get(String key) {
+        int hash = key.hashCode();
+        hash ^= (hash >>> 16); // spread high bits, as HashMap does
+        return stripes[hash & (stripes.length - 1)];
+    }
+}
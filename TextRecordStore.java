@@ -0,0 +1,131 @@
+/**
+ * TextRecordStore.java - The original text storage of BMI records
+ * Each user's history is kept in <name>_records.txt, one record per line:
+ * dd/MM/yyyy HH:mm:ss|weight|height|bmi|category
+ */
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+
+public class TextRecordStore implements RecordStore {
+    public static final String RECORDS_EXTENSION = "_records.txt";
+
+    private final File directory;
+
+    /**
+     * Constructor
+     * @param directory Directory holding the .txt record files
+     */
+    public TextRecordStore(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Get the text records file of a user
+     */
+    @Override
+    public File getRecordFile(String name) {
+        return new File(directory, name + RECORDS_EXTENSION);
+    }
+
+    /**
+     * Check whether a user has a text records file
+     */
+    @Override
+    public boolean exists(String name) {
+        return getRecordFile(name).exists();
+    }
+
+    /**
+     * Append records to a user's file with one buffered write
+     */
+    @Override
+    public void append(String name, List<FileManager.BMIRecord> records) throws IOException {
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(getRecordFile(name), true), 64 * 1024)) {
+            for (FileManager.BMIRecord record : records) {
+                writer.write(record.getTimestamp() + "|" + record.getWeight() + "|" +
+                             record.getHeight() + "|" + record.getBmi() + "|" + record.getCategory());
+                writer.newLine();
+            }
+        }
+    }
+
+    /**
+     * Parse every record of a user; malformed lines are skipped
+     */
+    @Override
+    public ArrayList<FileManager.BMIRecord> readRecords(String name) throws IOException {
+        ArrayList<FileManager.BMIRecord> records = new ArrayList<>();
+        File file = getRecordFile(name);
+        if (!file.exists()) {
+            return records;
+        }
+
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split("\\|");
+                if (parts.length >= 5) {
+                    FileManager.BMIRecord record = new FileManager.BMIRecord(
+                        parts[0], // timestamp
+                        Double.parseDouble(parts[1]), // weight
+                        Double.parseDouble(parts[2]), // height
+                        Double.parseDouble(parts[3]), // bmi
+                        parts[4] // category
+                    );
+                    records.add(record);
+                }
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Open a cursor over a user's text records file
+     */
+    @Override
+    public RecordCursor openCursor(String name) throws IOException {
+        return RecordFileReader.open(getRecordFile(name));
+    }
+
+    /**
+     * Read the last well-formed lines of a user's text records file
+     * Lines are found scanning backwards from the end of the file, so
+     * only the pages holding them are read
+     */
+    @Override
+    public ArrayList<FileManager.BMIRecord> readLastRecords(String name, int count) throws IOException {
+        ArrayList<FileManager.BMIRecord> records = new ArrayList<>();
+        try (RecordFileReader reader = RecordFileReader.open(getRecordFile(name))) {
+            reader.tail(count);
+            while (reader.next()) {
+                records.add(reader.toRecord());
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Count a user's records with one scan of the file
+     */
+    @Override
+    public long countRecords(String name) throws IOException {
+        try (RecordFileReader reader = RecordFileReader.open(getRecordFile(name))) {
+            long count = 0;
+            while (reader.next()) {
+                count++;
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Delete a user's text records file
+     */
+    @Override
+    public boolean delete(String name) {
+        File file = getRecordFile(name);
+        return file.exists() && file.delete();
+    }
+}
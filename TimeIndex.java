@@ -0,0 +1,319 @@
+/**
+ * TimeIndex.java - Sparse time index over a user's records file
+ * Every BLOCK_SIZE records the index keeps the block's byte offset, row
+ * number and its earliest and latest timestamp, stored next to the records
+ * as <name>_records.idx. A time-range query only decodes the blocks whose
+ * time span overlaps the range instead of scanning the whole history.
+ *
+ * Records files are append-only, so a stale index is extended from its last
+ * block rather than rebuilt. Histories appended in time order are searched
+ * by binary search over the blocks; out-of-order histories (e.g. bulk imports
+ * of old data) fall back to checking every block's time span.
+ *
+ * Rows whose timestamp cannot be parsed (BMIRecord.INVALID_TIME) are left out
+ * of the block spans and never match a range.
+ */
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+public class TimeIndex {
+    public static final String INDEX_EXTENSION = "_records.idx";
+    public static final int BLOCK_SIZE = 256;
+
+    private static final int MAGIC = 0x424D4958; // "BMIX"
+    // 2: unparseable timestamps no longer count toward block spans
+    private static final int VERSION = 2;
+    private static final long INVALID_TIME = FileManager.BMIRecord.INVALID_TIME;
+
+    private final boolean binary;
+    private long coveredLength;
+    private int blocks;
+    private long[] offsets = new long[16];
+    private long[] firstRows = new long[16];
+    private long[] minTimes = new long[16];
+    private long[] maxTimes = new long[16];
+
+    private TimeIndex(boolean binary) {
+        this.binary = binary;
+    }
+
+    /**
+     * Find the records with fromMillis <= timestamp < toMillis, in file order
+     * The index is brought up to date (and saved) first if the records file grew.
+     * @param reader Open reader over the records file; the caller keeps it stable
+     */
+    public static ArrayList<FileManager.BMIRecord> query(RecordFileReader reader, File indexFile,
+                                                         long fileLength, long fromMillis, long toMillis) {
+        TimeIndex index = open(reader, indexFile, fileLength);
+
+        ArrayList<FileManager.BMIRecord> records = new ArrayList<>();
+        boolean sorted = index.isSorted();
+        for (int block = sorted ? index.firstCandidate(fromMillis) : 0; block < index.blocks; block++) {
+            if (index.isEmpty(block)) {
+                continue;
+            }
+            if (index.minTimes[block] >= toMillis) {
+                if (sorted) {
+                    break;
+                }
+                continue;
+            }
+            if (index.maxTimes[block] < fromMillis) {
+                continue;
+            }
+
+            reader.rewind((int) index.offsets[block], index.firstRows[block]);
+            for (int row = 0; row < BLOCK_SIZE && reader.next(); row++) {
+                long time = reader.getTimestampMillis();
+                if (time != INVALID_TIME && time >= fromMillis && time < toMillis) {
+                    records.add(reader.toRecord());
+                }
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Position a reader so its next row is the given row (or it has none left)
+     * Binary files seek directly; text files start from the index block that
+     * holds the row, so deep pages cost at most BLOCK_SIZE skipped rows.
+     * @param reader Reader over the file this index was opened for
+     */
+    public void skipTo(RecordFileReader reader, long row) {
+        if (binary) {
+            if (row > 0 && reader.getRecordCount() > 0) {
+                reader.seek(Math.min(row, reader.getRecordCount()) - 1);
+            } else {
+                reader.rewind(0, 0);
+            }
+            return;
+        }
+
+        int block = blockOf(row);
+        if (block >= 0) {
+            reader.rewind((int) offsets[block], firstRows[block]);
+        } else {
+            reader.rewind(0, 0);
+        }
+        while (reader.getRowIndex() < row - 1 && reader.next()) {
+            // Skip the rows of the block before the wanted one
+        }
+    }
+
+    /**
+     * Count the rows of the records file, reading only its last block
+     * @param reader Reader over the file this index was opened for
+     */
+    public long countRows(RecordFileReader reader) {
+        if (binary) {
+            return reader.getRecordCount();
+        }
+        if (blocks == 0) {
+            return 0;
+        }
+        reader.rewind((int) offsets[blocks - 1], firstRows[blocks - 1]);
+        while (reader.next()) {
+            // Count the rows of the last block
+        }
+        return reader.getRowIndex() + 1;
+    }
+
+    /**
+     * Load the saved index, bringing it up to date (and saving it) if the records file grew
+     * The first call for a history scans it once; later calls only read what was appended.
+     * @param reader Open reader over the records file; the caller keeps it stable
+     */
+    public static TimeIndex open(RecordFileReader reader, File indexFile, long fileLength) {
+        TimeIndex index = load(indexFile, reader.isBinary(), fileLength);
+        if (index == null || index.coveredLength < fileLength) {
+            if (index == null) {
+                index = new TimeIndex(reader.isBinary());
+            }
+            index.extend(reader, fileLength);
+            index.save(indexFile);
+        }
+        return index;
+    }
+
+    /**
+     * Last block starting at or before the given row, or -1 if there is none
+     */
+    private int blockOf(long row) {
+        int low = 0;
+        int high = blocks;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (firstRows[mid] <= row) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low - 1;
+    }
+
+    /**
+     * First block that can hold a timestamp >= fromMillis (sorted histories only,
+     * where block maxima never decrease)
+     */
+    private int firstCandidate(long fromMillis) {
+        int low = 0;
+        int high = blocks;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (maxTimes[mid] < fromMillis) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Whether no block starts before the previous one ends
+     * A block without valid timestamps breaks the binary search, so any such
+     * block makes the history count as unsorted.
+     */
+    private boolean isSorted() {
+        for (int block = 0; block < blocks; block++) {
+            if (isEmpty(block) || (block > 0 && minTimes[block] < maxTimes[block - 1])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Whether a block has no row with a valid timestamp
+     */
+    private boolean isEmpty(int block) {
+        return minTimes[block] > maxTimes[block];
+    }
+
+    /**
+     * Index the rows added since the last update, starting over from the last
+     * (possibly partial) block
+     */
+    private void extend(RecordFileReader reader, long fileLength) {
+        if (blocks > 0) {
+            blocks--;
+            reader.rewind((int) offsets[blocks], firstRows[blocks]);
+        } else {
+            reader.rewind(reader.isBinary() ? BinaryRecordStore.HEADER_SIZE : 0, 0);
+        }
+
+        while (reader.next()) {
+            long row = reader.getRowIndex();
+            long time = reader.getTimestampMillis();
+            if (row % BLOCK_SIZE == 0) {
+                if (blocks == offsets.length) {
+                    grow();
+                }
+                offsets[blocks] = reader.getRowStart();
+                firstRows[blocks] = row;
+                minTimes[blocks] = Long.MAX_VALUE;
+                maxTimes[blocks] = Long.MIN_VALUE;
+                blocks++;
+            }
+            if (time != INVALID_TIME) {
+                minTimes[blocks - 1] = Math.min(minTimes[blocks - 1], time);
+                maxTimes[blocks - 1] = Math.max(maxTimes[blocks - 1], time);
+            }
+        }
+        coveredLength = fileLength;
+    }
+
+    private void grow() {
+        int size = offsets.length * 2;
+        offsets = Arrays.copyOf(offsets, size);
+        firstRows = Arrays.copyOf(firstRows, size);
+        minTimes = Arrays.copyOf(minTimes, size);
+        maxTimes = Arrays.copyOf(maxTimes, size);
+    }
+
+    /**
+     * Load a saved index, or null if it is missing, unreadable or does not
+     * belong to the current records file
+     */
+    private static TimeIndex load(File indexFile, boolean binary, long fileLength) {
+        if (!indexFile.exists()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(indexFile), 64 * 1024))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            if (in.readBoolean() != binary || in.readInt() != BLOCK_SIZE) {
+                return null;
+            }
+            TimeIndex index = new TimeIndex(binary);
+            index.coveredLength = in.readLong();
+            if (index.coveredLength > fileLength) {
+                return null; // records file was replaced or truncated
+            }
+            int blocks = in.readInt();
+            while (index.offsets.length < blocks) {
+                index.grow();
+            }
+            for (int block = 0; block < blocks; block++) {
+                index.offsets[block] = in.readLong();
+                index.firstRows[block] = in.readLong();
+                index.minTimes[block] = in.readLong();
+                index.maxTimes[block] = in.readLong();
+            }
+            index.blocks = blocks;
+            return index;
+        } catch (IOException e) {
+            // Unreadable indexes are simply rebuilt
+            return null;
+        }
+    }
+
+    /**
+     * Atomically replace the saved index (write temp, then rename)
+     * Concurrent readers may update the same index, so each uses its own temp file
+     */
+    private void save(File indexFile) {
+        File tempFile;
+        try {
+            tempFile = File.createTempFile(indexFile.getName() + "_", ".tmp", indexFile.getAbsoluteFile().getParentFile());
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tempFile), 64 * 1024))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeBoolean(binary);
+            out.writeInt(BLOCK_SIZE);
+            out.writeLong(coveredLength);
+            out.writeInt(blocks);
+            for (int block = 0; block < blocks; block++) {
+                out.writeLong(offsets[block]);
+                out.writeLong(firstRows[block]);
+                out.writeLong(minTimes[block]);
+                out.writeLong(maxTimes[block]);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            tempFile.delete();
+            return;
+        }
+
+        try {
+            Files.move(tempFile.toPath(), indexFile.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            e.printStackTrace();
+            tempFile.delete();
+        }
+    }
+}
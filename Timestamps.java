@@ -0,0 +1,149 @@
+/**
+ * Timestamps.java - Shared conversion between epoch millis and dd/MM/yyyy HH:mm:ss
+ * Records keep their time as epoch millis and only turn it into text when it
+ * is shown or written. Formatting goes through a per-second cache, and on a
+ * miss the string is assembled from a cached date prefix, so rendering or
+ * exporting a long history does not spend its time in date formatting.
+ * All methods are thread-safe and use the default time zone, like the
+ * SimpleDateFormat instances they replace.
+ */
+
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.ResolverStyle;
+import java.time.zone.ZoneRules;
+
+public final class Timestamps {
+    public static final String PATTERN = "dd/MM/yyyy HH:mm:ss";
+    public static final int LENGTH = PATTERN.length();
+    // Shown for FileManager.BMIRecord.INVALID_TIME, whose original text is not known here
+    public static final String UNKNOWN = "Unknown";
+
+    private static final ZoneId ZONE = ZoneId.systemDefault();
+    private static final ZoneRules RULES = ZONE.getRules();
+    private static final DateTimeFormatter FORMATTER =
+            DateTimeFormatter.ofPattern("dd/MM/uuuu HH:mm:ss").withResolverStyle(ResolverStyle.STRICT).withZone(ZONE);
+    private static final DateTimeFormatter DATE_PREFIX = DateTimeFormatter.ofPattern("dd/MM/uuuu ");
+
+    private static final long SECONDS_PER_DAY = 86400;
+
+    // Direct-mapped caches; entries are immutable, so racy reads are safe
+    private static final int CACHE_SIZE = 4096;
+    private static final Entry[] SECONDS = new Entry[CACHE_SIZE];
+    private static final Entry[] DAYS = new Entry[256];
+
+    private static class Entry {
+        final long key;
+        final String text;
+
+        Entry(long key, String text) {
+            this.key = key;
+            this.text = text;
+        }
+    }
+
+    private Timestamps() {
+    }
+
+    /**
+     * Current time in epoch millis
+     */
+    public static long now() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * Format epoch millis as dd/MM/yyyy HH:mm:ss, or UNKNOWN for an invalid time
+     */
+    public static String format(long millis) {
+        if (millis == FileManager.BMIRecord.INVALID_TIME) {
+            return UNKNOWN;
+        }
+        long second = Math.floorDiv(millis, 1000);
+        int slot = (int) (second & (CACHE_SIZE - 1));
+        Entry cached = SECONDS[slot];
+        if (cached != null && cached.key == second) {
+            return cached.text;
+        }
+
+        long localSecond = second + RULES.getOffset(Instant.ofEpochSecond(second)).getTotalSeconds();
+        long day = Math.floorDiv(localSecond, SECONDS_PER_DAY);
+        int secondOfDay = (int) Math.floorMod(localSecond, SECONDS_PER_DAY);
+
+        char[] text = new char[LENGTH];
+        datePrefix(day).getChars(0, 11, text, 0);
+        putTwoDigits(text, 11, secondOfDay / 3600);
+        text[13] = ':';
+        putTwoDigits(text, 14, secondOfDay / 60 % 60);
+        text[16] = ':';
+        putTwoDigits(text, 17, secondOfDay % 60);
+
+        String formatted = new String(text);
+        SECONDS[slot] = new Entry(second, formatted);
+        return formatted;
+    }
+
+    /**
+     * Parse dd/MM/yyyy HH:mm:ss into epoch millis
+     * @throws DateTimeException if the text is not a valid timestamp
+     */
+    public static long parse(CharSequence text) {
+        if (text.length() == LENGTH && text.charAt(2) == '/' && text.charAt(5) == '/' &&
+            text.charAt(10) == ' ' && text.charAt(13) == ':' && text.charAt(16) == ':') {
+            int day = digits(text, 0, 2);
+            int month = digits(text, 3, 2);
+            int year = digits(text, 6, 4);
+            int hour = digits(text, 11, 2);
+            int minute = digits(text, 14, 2);
+            int second = digits(text, 17, 2);
+            if (day >= 0 && month >= 0 && year >= 0 && hour >= 0 && minute >= 0 && second >= 0) {
+                return toMillis(year, month, day, hour, minute, second);
+            }
+        }
+        // Reports the exact problem for anything the fast path does not handle
+        return Instant.from(FORMATTER.parse(text)).toEpochMilli();
+    }
+
+    /**
+     * Convert local date and time fields to epoch millis
+     * @throws DateTimeException if a field is out of range
+     */
+    public static long toMillis(int year, int month, int day, int hour, int minute, int second) {
+        return LocalDateTime.of(year, month, day, hour, minute, second).atZone(ZONE).toInstant().toEpochMilli();
+    }
+
+    /**
+     * Get the cached "dd/MM/yyyy " prefix of a local epoch day
+     */
+    private static String datePrefix(long day) {
+        int slot = (int) (day & (DAYS.length - 1));
+        Entry cached = DAYS[slot];
+        if (cached != null && cached.key == day) {
+            return cached.text;
+        }
+        String prefix = LocalDate.ofEpochDay(day).format(DATE_PREFIX);
+        DAYS[slot] = new Entry(day, prefix);
+        return prefix;
+    }
+
+    private static void putTwoDigits(char[] text, int at, int value) {
+        text[at] = (char) ('0' + value / 10);
+        text[at + 1] = (char) ('0' + value % 10);
+    }
+
+    private static int digits(CharSequence text, int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+}
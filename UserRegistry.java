@@ -0,0 +1,485 @@
+/**
+ * UserRegistry.java - In-memory index of registered users
+ * Users live in a snapshot (users.txt) plus an append-only journal of
+ * changes that a background compactor periodically folds into the snapshot.
+ *
+ * Thread safety: all writes (journal appends, compaction, reloads) go through
+ * a single writer lock, while lookups read concurrent maps and never block.
+ * Registries on the same users file share that lock, and hold a file lock
+ * (users.txt.lock) while touching the files, so another registry in this or
+ * another process cannot append to a journal that compaction is deleting.
+ *
+ * Lookups see changes made through any registry in this JVM at once, and
+ * check the files for changes by other processes at most once a second
+ * instead of on every read.
+ */
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+public class UserRegistry implements UserStore {
+    private static final String JOURNAL_EXTENSION = ".journal";
+    private static final String LOCK_EXTENSION = ".lock";
+    private static final String UPSERT = "U";
+    private static final String DELETE = "D";
+
+    // Compact once this many journal entries have piled up
+    private static final int COMPACT_THRESHOLD = 1000;
+    private static final long COMPACT_INTERVAL_SECONDS = 30;
+    // How long lookups trust the index before checking the files again
+    private static final long RECHECK_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final File userFile;
+    private final File journalFile;
+    private final File lockFile;
+    private final ScheduledExecutorService compactor;
+
+    // State of each users file by canonical path, shared by registries on the same file
+    private static final ConcurrentHashMap<String, SharedFile> SHARED_FILES = new ConcurrentHashMap<>();
+
+    // Writer lock, held by whichever thread is changing the files or the index
+    private final SharedFile shared;
+    private int journalEntries = 0;
+    // False when the journal ends in a torn write that the next entry must not join
+    private boolean journalTerminated = true;
+
+    // Current index and the file stamps it matches, replaced as a whole on reload
+    private volatile Index index = new Index();
+    private volatile Stamp stamp = Stamp.NONE;
+
+    /**
+     * Writer lock of a users file, and a version bumped whenever a registry in
+     * this JVM changes the file so the others know to reload
+     */
+    private static class SharedFile {
+        final AtomicLong version = new AtomicLong();
+    }
+
+    /**
+     * Users by name, plus their registration order
+     */
+    private static class Index {
+        final ConcurrentHashMap<String, Entry> byName = new ConcurrentHashMap<>();
+        final ConcurrentSkipListMap<Long, String> byOrder = new ConcurrentSkipListMap<>();
+        long nextOrder = 0;
+
+        void put(FileManager.UserDetails user) {
+            Entry existing = byName.get(user.getName());
+            long order = existing != null ? existing.order : nextOrder++;
+            byName.put(user.getName(), new Entry(order, user));
+            byOrder.put(order, user.getName());
+        }
+
+        void remove(String name) {
+            Entry existing = byName.remove(name);
+            if (existing != null) {
+                byOrder.remove(existing.order);
+            }
+        }
+    }
+
+    private static class Entry {
+        final long order;
+        final FileManager.UserDetails user;
+
+        Entry(long order, FileManager.UserDetails user) {
+            this.order = order;
+            this.user = user;
+        }
+    }
+
+    /**
+     * Modification time and size of the snapshot and journal, the shared
+     * version they were read at and when they were last checked
+     */
+    private static class Stamp {
+        static final Stamp NONE = new Stamp(-1, -1, -1, -1, -1, 0);
+
+        final long userModified, userLength, journalModified, journalLength;
+        final long version;
+        final long checkedAt;
+
+        Stamp(long userModified, long userLength, long journalModified, long journalLength,
+              long version, long checkedAt) {
+            this.userModified = userModified;
+            this.userLength = userLength;
+            this.journalModified = journalModified;
+            this.journalLength = journalLength;
+            this.version = version;
+            this.checkedAt = checkedAt;
+        }
+
+        Stamp checkedNow() {
+            return new Stamp(userModified, userLength, journalModified, journalLength, version, System.nanoTime());
+        }
+
+        boolean matches(File userFile, File journalFile) {
+            return userFile.lastModified() == userModified && userFile.length() == userLength &&
+                   journalFile.lastModified() == journalModified && journalFile.length() == journalLength;
+        }
+    }
+
+    /**
+     * Constructor - Starts the background journal compactor
+     * @param userFile Users snapshot file backing this registry
+     */
+    public UserRegistry(File userFile) {
+        this.userFile = userFile;
+        this.journalFile = new File(userFile.getPath() + JOURNAL_EXTENSION);
+        this.lockFile = new File(userFile.getPath() + LOCK_EXTENSION);
+        this.shared = SHARED_FILES.computeIfAbsent(canonicalPath(userFile), path -> new SharedFile());
+        this.compactor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "user-journal-compactor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        compactor.scheduleWithFixedDelay(this::compactIfNeeded,
+                COMPACT_INTERVAL_SECONDS, COMPACT_INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Get details of a user, or null if not registered
+     */
+    @Override
+    public FileManager.UserDetails getUser(String name) {
+        Entry entry = current().byName.get(name);
+        return entry != null ? entry.user : null;
+    }
+
+    /**
+     * Get all registered user names in registration order
+     */
+    @Override
+    public ArrayList<String> getUserNames() {
+        return new ArrayList<>(current().byOrder.values());
+    }
+
+    /**
+     * Get number of registered users
+     */
+    @Override
+    public int size() {
+        return current().byName.size();
+    }
+
+    /**
+     * Add or update a user with a single journal append
+     * The original registration date is kept for existing users
+     */
+    @Override
+    public boolean saveUser(String name, int age, String gender, String createdAt) {
+        return whileLocked(() -> {
+            Entry existing = index.byName.get(name);
+            String since = existing != null ? existing.user.getCreatedAt() : createdAt;
+            FileManager.UserDetails user = new FileManager.UserDetails(name, age, gender, since);
+            if (!appendJournal(UPSERT + "|" + formatLine(user))) {
+                return false;
+            }
+            index.put(user);
+            return true;
+        });
+    }
+
+    /**
+     * Remove a user with a single journal append
+     * @return false if the user was not registered or the write failed
+     */
+    @Override
+    public boolean deleteUser(String name) {
+        return whileLocked(() -> {
+            if (!index.byName.containsKey(name)) {
+                return false;
+            }
+            if (!appendJournal(DELETE + "|" + name)) {
+                return false;
+            }
+            index.remove(name);
+            return true;
+        });
+    }
+
+    /**
+     * Fold the journal into a fresh snapshot
+     * The snapshot is written to a temporary file and renamed over users.txt,
+     * so a crash leaves either the old or the new snapshot, never a partial one.
+     * Replaying a leftover journal over the new snapshot is harmless.
+     */
+    public boolean compact() {
+        return whileLocked(() -> journalEntries == 0 || writeSnapshot());
+    }
+
+    /**
+     * Write the index to users.txt and drop the journal (writer and file lock held)
+     */
+    private boolean writeSnapshot() {
+        File tempFile = new File(userFile.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tempFile);
+             BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out))) {
+            for (String name : index.byOrder.values()) {
+                Entry entry = index.byName.get(name);
+                if (entry != null) {
+                    writer.write(formatLine(entry.user));
+                    writer.newLine();
+                }
+            }
+            writer.flush();
+            out.getFD().sync();
+        } catch (IOException e) {
+            e.printStackTrace();
+            tempFile.delete();
+            return false;
+        }
+
+        try {
+            Files.move(tempFile.toPath(), userFile.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.deleteIfExists(journalFile.toPath());
+        } catch (IOException e) {
+            e.printStackTrace();
+            tempFile.delete();
+            return false;
+        }
+
+        journalEntries = 0;
+        journalTerminated = true;
+        shared.version.incrementAndGet();
+        rememberStamp();
+        return true;
+    }
+
+    /**
+     * Stop the background compactor after a final compaction
+     */
+    @Override
+    public void close() {
+        compactor.shutdown();
+        compact();
+    }
+
+    private void compactIfNeeded() {
+        try {
+            synchronized (shared) {
+                if (journalEntries >= COMPACT_THRESHOLD) {
+                    compact();
+                }
+            }
+        } catch (RuntimeException e) {
+            // Keep the scheduled task alive
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Get the index, reloading it first if the files were changed outside this registry
+     * Readers only take the writer lock in that rare case, and only look at
+     * the files once RECHECK_INTERVAL_NANOS has passed since the last look.
+     */
+    private Index current() {
+        Stamp seen = stamp;
+        if (seen.version == shared.version.get()) {
+            if (System.nanoTime() - seen.checkedAt < RECHECK_INTERVAL_NANOS) {
+                return index;
+            }
+            if (seen.matches(userFile, journalFile)) {
+                // Losing a race with a writer's newer stamp only costs a reload later
+                stamp = seen.checkedNow();
+                return index;
+            }
+        }
+        whileLocked(() -> true);
+        return index;
+    }
+
+    /**
+     * Run an action under the writer lock and the file lock, on an up-to-date index
+     * @return the action's result, or false if the files could not be locked
+     */
+    private boolean whileLocked(BooleanSupplier action) {
+        synchronized (shared) {
+            try {
+                FileChannel lock = lockFiles();
+                try {
+                    refreshIfChanged();
+                    return action.getAsBoolean();
+                } finally {
+                    lock.close();
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Lock users.txt and its journal against other processes (writer lock held)
+     * Closing the returned channel releases the lock. A pending interrupt is set
+     * aside while locking, since it would otherwise close the channel.
+     */
+    private FileChannel lockFiles() throws IOException {
+        boolean interrupted = Thread.interrupted();
+        try {
+            FileChannel channel = FileChannel.open(lockFile.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            try {
+                channel.lock();
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+            return channel;
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static String canonicalPath(File file) {
+        try {
+            return file.getCanonicalPath();
+        } catch (IOException e) {
+            return file.getAbsolutePath();
+        }
+    }
+
+    /**
+     * Reload the index if the snapshot or journal no longer match (writer and file lock held)
+     */
+    private void refreshIfChanged() {
+        if (stamp.version != shared.version.get() || !stamp.matches(userFile, journalFile)) {
+            reload();
+        }
+    }
+
+    /**
+     * Rebuild the index from users.txt and replay the journal over it (writer and file lock held)
+     * Snapshot format: name|age|gender|createdDate
+     * Journal format: U|name|age|gender|createdDate or D|name
+     * Every entry is written with its line separator in one write, so a last
+     * line without one is a torn write from a crash and is not replayed.
+     */
+    private void reload() {
+        Index loaded = new Index();
+        int entries = 0;
+        boolean terminated = true;
+
+        try {
+            if (userFile.exists()) {
+                try (BufferedReader reader = new BufferedReader(new FileReader(userFile))) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        FileManager.UserDetails user = parseLine(line.split("\\|"), 0);
+                        if (user != null) {
+                            loaded.put(user);
+                        }
+                    }
+                }
+            }
+
+            if (journalFile.exists()) {
+                terminated = endsWithNewline(journalFile);
+                try (BufferedReader reader = new BufferedReader(new FileReader(journalFile))) {
+                    String line = reader.readLine();
+                    while (line != null) {
+                        String next = reader.readLine();
+                        if (next == null && !terminated) {
+                            break;
+                        }
+                        String[] parts = line.split("\\|");
+                        if (parts[0].equals(UPSERT)) {
+                            FileManager.UserDetails user = parseLine(parts, 1);
+                            if (user != null) {
+                                loaded.put(user);
+                            }
+                        } else if (parts[0].equals(DELETE) && parts.length >= 2) {
+                            loaded.remove(parts[1]);
+                        }
+                        // Anything else is a torn write from a crash and is skipped
+                        entries++;
+                        line = next;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+
+        index = loaded;
+        journalEntries = entries;
+        journalTerminated = terminated;
+        rememberStamp();
+    }
+
+    private static boolean endsWithNewline(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            if (raf.length() == 0) {
+                return true;
+            }
+            raf.seek(raf.length() - 1);
+            return raf.read() == '\n';
+        }
+    }
+
+    /**
+     * Parse user fields starting at the given offset, or null if malformed
+     */
+    private FileManager.UserDetails parseLine(String[] parts, int offset) {
+        if (parts.length < offset + 4) {
+            return null;
+        }
+        try {
+            return new FileManager.UserDetails(parts[offset], Integer.parseInt(parts[offset + 1]),
+                                               parts[offset + 2], parts[offset + 3]);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private String formatLine(FileManager.UserDetails user) {
+        return user.getName() + "|" + user.getAge() + "|" +
+               user.getGender() + "|" + user.getCreatedAt();
+    }
+
+    /**
+     * Append one entry to the journal and force it to disk (writer and file lock held)
+     * After a torn write the entry starts on a new line instead of joining it.
+     */
+    private boolean appendJournal(String entry) {
+        String prefix = journalTerminated ? "" : System.lineSeparator();
+        byte[] bytes = (prefix + entry + System.lineSeparator()).getBytes();
+        try (FileOutputStream out = new FileOutputStream(journalFile, true)) {
+            out.write(bytes);
+            out.getFD().sync();
+        } catch (IOException e) {
+            e.printStackTrace();
+            // Force a reload so the index matches whatever is on disk
+            stamp = Stamp.NONE;
+            shared.version.incrementAndGet();
+            return false;
+        }
+        journalEntries++;
+        journalTerminated = true;
+        shared.version.incrementAndGet();
+        rememberStamp();
+        return true;
+    }
+
+    private void rememberStamp() {
+        stamp = new Stamp(userFile.lastModified(), userFile.length(),
+                          journalFile.lastModified(), journalFile.length(),
+                          shared.version.get(), System.nanoTime());
+    }
+}
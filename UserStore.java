@@ -0,0 +1,39 @@
+/**
+ * UserStore.java - Storage backend for registered users
+ */
+
+import java.util.ArrayList;
+
+public interface UserStore {
+    /**
+     * Get details of a user, or null if not registered
+     */
+    FileManager.UserDetails getUser(String name);
+
+    /**
+     * Get all registered user names in registration order
+     */
+    ArrayList<String> getUserNames();
+
+    /**
+     * Get number of registered users
+     */
+    int size();
+
+    /**
+     * Add or update a user
+     * The original registration date is kept for existing users
+     */
+    boolean saveUser(String name, int age, String gender, String createdAt);
+
+    /**
+     * Remove a user
+     * @return false if the user was not registered or the write failed
+     */
+    boolean deleteUser(String name);
+
+    /**
+     * Flush pending changes and release background resources
+     */
+    void close();
+}
@@ -0,0 +1,146 @@
+/**
+ * BenchmarkWorkload.java - Default-package side of the benchmark bridge
+ * Forwards each Workload operation to the tracker's own classes.
+ * Every workload works in its own scratch directory under java.io.tmpdir,
+ * deleted again by close(), so benchmarks never touch real users or records.
+ */
+
+import bmitracker.benchmarks.Workload;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class BenchmarkWorkload implements Workload {
+    private static final int GENERATE_BATCH = 50000;
+
+    private final File directory;
+    private final FileManager fileManager;
+
+    public BenchmarkWorkload(boolean binaryRecords) throws IOException {
+        directory = Files.createTempDirectory("jmh-bmi").toFile();
+        // The backend still comes from the environment unless binary is asked for.
+        // No record cache, so getUserRecords measures parsing rather than cache hits.
+        StorageConfig.Backend backend = binaryRecords
+                ? StorageConfig.Backend.BINARY : StorageConfig.fromEnvironment().getBackend();
+        this.fileManager = new FileManager(new StorageConfig(directory, backend, 0));
+    }
+
+    @Override
+    public void close() {
+        delete(directory);
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    @Override
+    public double newCalculator(String name, int age, String gender, double weight, double height) {
+        return new BMICalculator(name, age, gender, weight, height).getBMI();
+    }
+
+    @Override
+    public int computeCategory(double weight, double height) {
+        return BMICalculator.categoryCode(BMICalculator.computeBMI(weight, height));
+    }
+
+    @Override
+    public void scoreBatch(double[] weights, double[] heights, double[] bmis, int[] categories) {
+        BatchScorer.score(weights, heights, bmis, categories);
+    }
+
+    @Override
+    public Object getUserRecords(String name) {
+        return fileManager.getUserRecords(name);
+    }
+
+    @Override
+    public Object getUserStatistics(String name) {
+        return fileManager.getUserStatistics(name);
+    }
+
+    @Override
+    public void forgetStatistics(String name) {
+        fileManager.forgetStatistics(name);
+    }
+
+    @Override
+    public boolean saveBMIRecord(String name, double weight, double height) {
+        double bmi = BMICalculator.computeBMI(weight, height);
+        return fileManager.saveBMIRecord(name, weight, height, BMICalculator.roundBMI(bmi),
+                                         BMICalculator.categoryName(BMICalculator.categoryCode(bmi)));
+    }
+
+    @Override
+    public boolean exportUserData(String name, String exportFileName) {
+        return fileManager.exportUserData(name, exportFileName);
+    }
+
+    @Override
+    public void createUser(String name, int rows) {
+        if (!fileManager.saveUser(name, 30, "Female")) {
+            throw new IllegalStateException("Could not register " + name);
+        }
+        Random random = new Random(42);
+        long start = System.currentTimeMillis() - rows * 60000L;
+        List<FileManager.BMIRecord> batch = new ArrayList<>(GENERATE_BATCH);
+        for (int i = 0; i < rows; i++) {
+            double weight = Math.round((50 + random.nextDouble() * 60) * 10) / 10.0;
+            double height = Math.round(150 + random.nextDouble() * 40);
+            double bmi = BMICalculator.computeBMI(weight, height);
+            batch.add(new FileManager.BMIRecord(start + i * 60000L, weight, height,
+                    BMICalculator.roundBMI(bmi), BMICalculator.categoryName(BMICalculator.categoryCode(bmi))));
+            if (batch.size() == GENERATE_BATCH || i == rows - 1) {
+                if (!fileManager.appendBMIRecords(name, batch)) {
+                    throw new IllegalStateException("Could not generate records for " + name);
+                }
+                batch.clear();
+            }
+        }
+    }
+
+    @Override
+    public void deleteUser(String name, String exportFileName) {
+        fileManager.deleteUser(name);
+        fileManager.deleteUserRecords(name);
+        if (exportFileName != null) {
+            new File(fileManager.getDataDirectory(), exportFileName).delete();
+        }
+    }
+
+    @Override
+    public Registry openRegistry(File userFile, int users) {
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(userFile))) {
+            for (int i = 0; i < users; i++) {
+                writer.write("user" + i + "|30|Female|01/01/2024 00:00:00");
+                writer.newLine();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        new File(userFile.getPath() + ".journal").delete();
+
+        UserRegistry registry = new UserRegistry(userFile);
+        registry.size(); // load the snapshot outside the measurement
+        return new Registry() {
+            @Override
+            public boolean saveUser(String name, int age, String gender) {
+                return registry.saveUser(name, age, gender, "01/01/2024 00:00:00");
+            }
+
+            @Override
+            public void close() {
+                registry.close();
+            }
+        };
+    }
+}
@@ -0,0 +1,66 @@
+/**
+ * CalculationBenchmark.java - Cost of computing a BMI and its category
+ * Compares constructing a BMICalculator per measurement with the static
+ * kernel, and measures batch scoring throughput.
+ */
+package bmitracker.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class CalculationBenchmark {
+    private static final int BATCH_ROWS = 1000000;
+
+    private Workload workload;
+    private double weight = 72.5;
+    private double height = 176;
+    private double[] weights, heights, bmis;
+    private int[] categories;
+
+    @Setup
+    public void setUp() {
+        workload = Workload.create(false);
+        Random random = new Random(42);
+        weights = new double[BATCH_ROWS];
+        heights = new double[BATCH_ROWS];
+        bmis = new double[BATCH_ROWS];
+        categories = new int[BATCH_ROWS];
+        for (int i = 0; i < BATCH_ROWS; i++) {
+            weights[i] = 40 + random.nextDouble() * 100;
+            heights[i] = 140 + random.nextDouble() * 60;
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        workload.close();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public double newCalculator() {
+        return workload.newCalculator("Jane", 30, "Female", weight, height);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public int staticKernel() {
+        return workload.computeCategory(weight, height);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public int[] scoreMillionRows() {
+        workload.scoreBatch(weights, heights, bmis, categories);
+        return categories;
+    }
+}
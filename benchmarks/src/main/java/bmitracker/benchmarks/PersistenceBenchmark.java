@@ -0,0 +1,86 @@
+/**
+ * PersistenceBenchmark.java - Write throughput of records and users
+ * saveBMIRecord appends to one growing history; saveUser updates users in
+ * registries of different sizes, each on its own scratch users file.
+ */
+package bmitracker.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class PersistenceBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Records {
+        @Param({"false", "true"})
+        public boolean binary;
+
+        Workload workload;
+        String name;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            workload = Workload.create(binary);
+            name = "jmh_append" + (binary ? "_bin" : "_txt");
+            workload.deleteUser(name, null);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            workload.deleteUser(name, null);
+            workload.close();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Users {
+        @Param({"1000", "100000", "1000000"})
+        public int users;
+
+        File directory;
+        Workload workload;
+        Workload.Registry registry;
+        int next;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            directory = Files.createTempDirectory("jmh-users").toFile();
+            workload = Workload.create(false);
+            registry = workload.openRegistry(new File(directory, "users.txt"), users);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            registry.close();
+            workload.close();
+            File[] files = directory.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            directory.delete();
+        }
+    }
+
+    @Benchmark
+    public boolean saveBMIRecord(Records records) {
+        return records.workload.saveBMIRecord(records.name, 72.5, 176);
+    }
+
+    @Benchmark
+    public boolean saveUser(Users users) {
+        // Update existing users spread over the whole registry
+        users.next = (users.next + 7919) % users.users;
+        return users.registry.saveUser("user" + users.next, 31, "Female");
+    }
+}
@@ -0,0 +1,76 @@
+/**
+ * RecordsBenchmark.java - Reading a user's history at different sizes
+ * Covers parsing every record, statistics from the persisted summary and
+ * from a full rescan, and exporting a report.
+ * The 10M row case needs a few GB of heap and disk; pick sizes with -p rows=...
+ */
+package bmitracker.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx6g")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class RecordsBenchmark {
+
+    @Param({"1000", "100000", "10000000"})
+    public int rows;
+
+    @Param({"false", "true"})
+    public boolean binary;
+
+    private Workload workload;
+    private String name;
+    private String exportFileName;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        workload = Workload.create(binary);
+        name = "jmh_records_" + rows + (binary ? "_bin" : "_txt");
+        exportFileName = name + "_Report.txt";
+        workload.deleteUser(name, exportFileName);
+        workload.createUser(name, rows);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        workload.deleteUser(name, exportFileName);
+        workload.close();
+    }
+
+    @Benchmark
+    public Object getUserRecords() {
+        return workload.getUserRecords(name);
+    }
+
+    @Benchmark
+    public Object statisticsFromSummary() {
+        return workload.getUserStatistics(name);
+    }
+
+    /**
+     * Statistics with no summary on disk, forcing a scan of every record
+     */
+    @State(Scope.Thread)
+    public static class NoSummary {
+        @Setup(Level.Invocation)
+        public void forget(RecordsBenchmark benchmark) {
+            benchmark.workload.forgetStatistics(benchmark.name);
+        }
+    }
+
+    @Benchmark
+    public Object statisticsRescan(NoSummary noSummary) {
+        return workload.getUserStatistics(name);
+    }
+
+    @Benchmark
+    public boolean exportUserData() {
+        return workload.exportUserData(name, exportFileName);
+    }
+}
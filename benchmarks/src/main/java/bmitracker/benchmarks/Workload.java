@@ -0,0 +1,72 @@
+/**
+ * Workload.java - Operations under benchmark, as seen from the benchmarks
+ * The tracker's classes live in the default package, which named packages
+ * cannot import, while JMH refuses benchmarks in the default package. The
+ * operations are therefore reached through this interface, implemented by
+ * BenchmarkWorkload in the default package. The single implementation keeps
+ * every call monomorphic, so the JIT inlines straight through it.
+ *
+ * Each workload stores its data in a scratch directory of its own; close
+ * it in a @TearDown to delete that directory.
+ */
+package bmitracker.benchmarks;
+
+import java.lang.reflect.InvocationTargetException;
+
+public interface Workload extends AutoCloseable {
+
+    /**
+     * Load the default-package implementation
+     * @param binaryRecords Whether records use the binary backend
+     */
+    static Workload create(boolean binaryRecords) {
+        try {
+            return (Workload) Class.forName("BenchmarkWorkload")
+                    .getConstructor(boolean.class).newInstance(binaryRecords);
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException("Could not set up the benchmark workload", e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("BenchmarkWorkload not on the classpath", e);
+        }
+    }
+
+    /** Construct a BMICalculator and read its BMI */
+    double newCalculator(String name, int age, String gender, double weight, double height);
+
+    /** BMI and category through the static kernel only */
+    int computeCategory(double weight, double height);
+
+    /** Score whole arrays with the batch scorer */
+    void scoreBatch(double[] weights, double[] heights, double[] bmis, int[] categories);
+
+    Object getUserRecords(String name);
+
+    Object getUserStatistics(String name);
+
+    /** Drop the persisted statistics summary so the next call rescans the records */
+    void forgetStatistics(String name);
+
+    boolean saveBMIRecord(String name, double weight, double height);
+
+    boolean exportUserData(String name, String exportFileName);
+
+    /** Register a user and append generated records, in large batches */
+    void createUser(String name, int rows);
+
+    /** Delete a user, their records and any export written for them */
+    void deleteUser(String name, String exportFileName);
+
+    /** Open a registry over a scratch users file holding the given number of users */
+    Registry openRegistry(java.io.File userFile, int users);
+
+    /** Delete the scratch data directory */
+    @Override
+    void close();
+
+    interface Registry extends AutoCloseable {
+        boolean saveUser(String name, int age, String gender);
+
+        @Override
+        void close();
+    }
+}
@@ -0,0 +1,68 @@
+/**
+ * BatchScorerTest.java - Batch scoring matches BMICalculator row for row
+ * Under the vector profile the tests run with jdk.incubator.vector, so this
+ * also checks the Vector API kernel against the scalar one.
+ */
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BatchScorerTest {
+    private static final double[] SPECIAL = {
+        0, -0.0, -5, 1e-300, 1e300, Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY,
+        18.5, 25, 30, 100, 175
+    };
+
+    @Test
+    void arraysMatchScalarKernel() {
+        int rows = 3 * BatchScorer.CHUNK_SIZE + 13;
+        double[] weights = new double[rows];
+        double[] heights = new double[rows];
+        fill(weights, heights);
+
+        double[] expectedBmis = new double[rows];
+        int[] expectedCategories = new int[rows];
+        BMICalculator.score(weights, heights, expectedBmis, expectedCategories, 0, rows);
+
+        double[] bmis = new double[rows];
+        int[] categories = new int[rows];
+        BatchScorer.score(weights, heights, bmis, categories);
+        assertArrayEquals(expectedBmis, bmis);
+        assertArrayEquals(expectedCategories, categories);
+
+        double[] bmisOnly = new double[rows];
+        BatchScorer.score(weights, heights, bmisOnly, null, 0, rows, false);
+        assertArrayEquals(expectedBmis, bmisOnly);
+    }
+
+    @Test
+    void directBuffersMatchScalarKernel() {
+        int rows = BatchScorer.CHUNK_SIZE + 7;
+        double[] weights = new double[rows];
+        double[] heights = new double[rows];
+        fill(weights, heights);
+
+        double[] expectedBmis = new double[rows];
+        int[] expectedCategories = new int[rows];
+        BMICalculator.score(weights, heights, expectedBmis, expectedCategories, 0, rows);
+
+        DoubleBuffer bmis = DoubleBuffer.allocate(rows);
+        IntBuffer categories = IntBuffer.allocate(rows);
+        BatchScorer.score(DoubleBuffer.wrap(weights), DoubleBuffer.wrap(heights), bmis, categories, true);
+        assertArrayEquals(expectedBmis, bmis.array());
+        assertArrayEquals(expectedCategories, categories.array());
+    }
+
+    private static void fill(double[] weights, double[] heights) {
+        Random random = new Random(42);
+        for (int i = 0; i < weights.length; i++) {
+            weights[i] = i % 97 == 0 ? SPECIAL[random.nextInt(SPECIAL.length)] : random.nextDouble() * 300 - 20;
+            heights[i] = i % 89 == 0 ? SPECIAL[random.nextInt(SPECIAL.length)] : random.nextDouble() * 250 - 10;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/**
+ * KeyValueStoreTest.java - Key-value store survives interrupted readers and writers
+ */
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class KeyValueStoreTest {
+    private static final long START = 1600000000000L;
+
+    @TempDir
+    File directory;
+
+    private KeyValueStore store;
+
+    @BeforeEach
+    void open() throws Exception {
+        store = new KeyValueStore(directory);
+        assertTrue(store.saveUser("ann", 30, "Female", "01/01/2020 10:00:00"));
+        store.append("ann", records(5000, START));
+    }
+
+    @AfterEach
+    void close() {
+        Thread.interrupted();
+        store.close();
+    }
+
+    @Test
+    void interruptedReaderLeavesStoreWorking() throws Exception {
+        Thread.currentThread().interrupt();
+        assertEquals(5000, store.readRecords("ann").size());
+        assertTrue(Thread.interrupted(), "interrupt is kept for the caller");
+
+        // Other threads, and later calls on this one, still read and write
+        assertEquals(5000, store.readRecords("ann").size());
+        assertTrue(store.saveUser("bob", 40, "Male", "01/01/2020 10:00:00"));
+        store.append("bob", records(10, START));
+        assertEquals(10, store.readRecords("bob").size());
+    }
+
+    @Test
+    void readerInterruptedMidReadLeavesStoreWorking() throws Exception {
+        List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+        Thread reader = new Thread(() -> {
+            try {
+                for (int i = 0; i < 300; i++) {
+                    assertEquals(5000, store.readRecords("ann").size());
+                    Thread.interrupted();
+                }
+            } catch (Throwable e) {
+                failures.add(e);
+            }
+        });
+        reader.start();
+        while (reader.isAlive()) {
+            reader.interrupt();
+            Thread.sleep(0, 50000);
+        }
+
+        assertEquals(Collections.emptyList(), failures);
+        assertEquals(5000, store.readRecords("ann").size());
+        assertTrue(store.saveUser("bob", 40, "Male", "01/01/2020 10:00:00"));
+    }
+
+    @Test
+    void interruptInOneThreadDoesNotBreakAnotherThreadsCursor() throws Exception {
+        try (RecordCursor cursor = store.openCursor("ann")) {
+            assertTrue(cursor.next());
+
+            Thread reader = new Thread(() -> {
+                Thread.currentThread().interrupt();
+                try {
+                    store.readRecords("ann");
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            reader.start();
+            reader.join();
+
+            int rows = 1;
+            while (cursor.next()) {
+                rows++;
+            }
+            assertEquals(5000, rows);
+        }
+    }
+
+    @Test
+    void interruptedWriterCompletesAndIsPersisted() throws Exception {
+        Thread.currentThread().interrupt();
+        assertTrue(store.saveUser("bob", 40, "Male", "01/01/2020 10:00:00"));
+        store.append("bob", records(3, START));
+        assertTrue(Thread.interrupted());
+
+        store.close();
+        store = new KeyValueStore(directory);
+        assertEquals(40, store.getUser("bob").getAge());
+        assertEquals(3, store.readRecords("bob").size());
+        assertEquals(5000, store.countRecords("ann"));
+    }
+
+    private static List<FileManager.BMIRecord> records(int count, long start) {
+        List<FileManager.BMIRecord> records = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            records.add(new FileManager.BMIRecord(start + i * 60000L, 70, 175, 22.86, "Normal weight"));
+        }
+        return Collections.unmodifiableList(records);
+    }
+}
@@ -0,0 +1,167 @@
+/**
+ * RecordFileReaderTest.java - Records files can be changed right after a read, and text files seek
+ */
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RecordFileReaderTest {
+    private static final long START = 1600000000000L;
+
+    @TempDir
+    File directory;
+
+    @Test
+    void textFileCanBeDeletedAndRecreatedAfterRead() throws Exception {
+        deleteAndAppendAfterRead(new TextRecordStore(directory));
+    }
+
+    @Test
+    void binaryFileCanBeDeletedAndRecreatedAfterRead() throws Exception {
+        deleteAndAppendAfterRead(new BinaryRecordStore(directory));
+    }
+
+    @Test
+    void fileCanBeAppendedAndTruncatedAfterRead() throws Exception {
+        BinaryRecordStore store = new BinaryRecordStore(directory);
+        store.append("ann", records(1000, START));
+        File file = store.getRecordFile("ann");
+        assertEquals(1000, readAll(file));
+
+        store.append("ann", records(10, START + 1000 * 60000L));
+        assertEquals(1010, readAll(file));
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(BinaryRecordStore.HEADER_SIZE + 5L * BinaryRecordStore.RECORD_SIZE);
+        }
+        assertEquals(5, readAll(file));
+    }
+
+    @Test
+    void tailAndRewindCrossWindowBoundaries() throws Exception {
+        TextRecordStore store = new TextRecordStore(directory);
+        store.append("ann", records(20000, START));
+        File file = store.getRecordFile("ann");
+
+        try (RecordFileReader reader = RecordFileReader.open(file)) {
+            reader.tail(15000);
+            long expected = START + 5000 * 60000L;
+            while (reader.next()) {
+                assertEquals(expected, reader.getTimestampMillis());
+                expected += 60000L;
+            }
+            assertEquals(START + 20000 * 60000L, expected);
+
+            reader.rewind(0, 0);
+            assertTrue(reader.next());
+            assertEquals(START, reader.getTimestampMillis());
+        }
+    }
+
+    @Test
+    void textSeekMatchesBinarySeek() throws Exception {
+        TextRecordStore text = new TextRecordStore(directory);
+        BinaryRecordStore binary = new BinaryRecordStore(directory);
+        text.append("ann", records(3000, START));
+        binary.append("ann", records(3000, START));
+        // A malformed line does not count as a row
+        Files.write(text.getRecordFile("ann").toPath(), "garbage\n".getBytes(),
+                    StandardOpenOption.APPEND);
+        text.append("ann", records(5, START + 3000 * 60000L));
+        binary.append("ann", records(5, START + 3000 * 60000L));
+
+        try (RecordFileReader textReader = RecordFileReader.open(text.getRecordFile("ann"));
+             RecordFileReader binaryReader = RecordFileReader.open(binary.getRecordFile("ann"))) {
+            textReader.tail(2);
+            for (long row : new long[] {2500, 10, 0, 2999, 3004, 256, 255, 1024, 1030, 1000}) {
+                textReader.seek(row);
+                binaryReader.seek(row);
+                assertEquals(row, textReader.getRowIndex());
+                assertEquals(binaryReader.getTimestampMillis(), textReader.getTimestampMillis());
+            }
+            assertTrue(textReader.next());
+            assertEquals(1001, textReader.getRowIndex());
+            assertThrows(IndexOutOfBoundsException.class, () -> textReader.seek(3005));
+            textReader.seek(3);
+            assertEquals(START + 3 * 60000L, textReader.getTimestampMillis());
+        }
+    }
+
+    @Test
+    void unparseableTimestampsAreInvalidAndOutsideEveryRange() throws Exception {
+        File file = new File(directory, "ann_records.txt");
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 600; i++) {
+            String time = i % 100 == 7 ? "31/02/2020 10:00:00" : Timestamps.format(START + i * 60000L);
+            text.append(time).append("|70.0|175.0|22.86|Normal weight\n");
+        }
+        // A whole index block of bad timestamps
+        for (int i = 0; i < TimeIndex.BLOCK_SIZE; i++) {
+            text.append("not a date|70.0|175.0|22.86|Normal weight\n");
+        }
+        Files.write(file.toPath(), text.toString().getBytes());
+
+        try (RecordFileReader reader = RecordFileReader.open(file)) {
+            for (int i = 0; i <= 7; i++) {
+                assertTrue(reader.next());
+            }
+            assertEquals(FileManager.BMIRecord.INVALID_TIME, reader.getTimestampMillis());
+        }
+
+        File index = new File(directory, "ann" + TimeIndex.INDEX_EXTENSION);
+        for (int pass = 0; pass < 2; pass++) {
+            try (RecordFileReader reader = RecordFileReader.open(file)) {
+                assertEquals(594, TimeIndex.query(reader, index, file.length(),
+                                                  Long.MIN_VALUE, Long.MAX_VALUE).size());
+            }
+            try (RecordFileReader reader = RecordFileReader.open(file)) {
+                assertEquals(0, TimeIndex.query(reader, index, file.length(), Long.MIN_VALUE, 1).size());
+            }
+            try (RecordFileReader reader = RecordFileReader.open(file)) {
+                assertEquals(99, TimeIndex.query(reader, index, file.length(),
+                                                 START + 500 * 60000L, Long.MAX_VALUE).size());
+            }
+        }
+    }
+
+    private void deleteAndAppendAfterRead(RecordStore store) throws Exception {
+        store.append("ann", records(5000, START));
+        File file = store.getRecordFile("ann");
+        assertEquals(5000, store.readRecords("ann").size());
+        assertEquals(3, store.readLastRecords("ann", 3).size());
+
+        assertTrue(file.delete(), "records file is released once read");
+        assertFalse(file.exists());
+
+        store.append("ann", records(7, START));
+        assertEquals(7, store.readRecords("ann").size());
+    }
+
+    private static int readAll(File file) throws Exception {
+        int rows = 0;
+        try (RecordFileReader reader = RecordFileReader.open(file)) {
+            while (reader.next()) {
+                rows++;
+            }
+        }
+        return rows;
+    }
+
+    private static List<FileManager.BMIRecord> records(int count, long start) {
+        List<FileManager.BMIRecord> records = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            records.add(new FileManager.BMIRecord(start + i * 60000L, 70, 175, 22.86, "Normal weight"));
+        }
+        return Collections.unmodifiableList(records);
+    }
+}
@@ -0,0 +1,86 @@
+/**
+ * UserRegistryTest.java - Journal recovery after a torn write, and registries sharing one file
+ */
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UserRegistryTest {
+    private static final String CREATED = "01/01/2020 10:00:00";
+
+    @TempDir
+    File directory;
+
+    @Test
+    void entryAfterTornWriteIsNotJoinedToIt() throws Exception {
+        File userFile = new File(directory, "users.txt");
+        File journalFile = new File(directory, "users.txt.journal");
+
+        UserRegistry registry = new UserRegistry(userFile);
+        assertTrue(registry.saveUser("ann", 30, "Female", CREATED));
+        // A crash mid-append leaves a partial entry with no line separator
+        try (FileOutputStream out = new FileOutputStream(journalFile, true)) {
+            out.write("U|bob|40|Ma".getBytes());
+        }
+
+        UserRegistry reopened = new UserRegistry(userFile);
+        assertNull(reopened.getUser("bob"), "torn entry is not replayed");
+        assertTrue(reopened.saveUser("carl", 50, "Male", CREATED));
+
+        UserRegistry recovered = new UserRegistry(userFile);
+        assertEquals(Arrays.asList("ann", "carl"), recovered.getUserNames());
+        assertEquals(50, recovered.getUser("carl").getAge());
+
+        registry.close();
+        reopened.close();
+        recovered.close();
+    }
+
+    @Test
+    void completeEntryWithoutTornTailIsReplayed() throws Exception {
+        File userFile = new File(directory, "users.txt");
+        File journalFile = new File(directory, "users.txt.journal");
+        try (FileOutputStream out = new FileOutputStream(journalFile)) {
+            out.write(("U|ann|30|Female|" + CREATED + "\nD|ann\nU|bob|40|Male|" + CREATED + "\n").getBytes());
+        }
+
+        UserRegistry registry = new UserRegistry(userFile);
+        assertEquals(Arrays.asList("bob"), registry.getUserNames());
+        registry.close();
+    }
+
+    @Test
+    void compactionDoesNotDropEntriesFromAnotherRegistry() throws Exception {
+        File userFile = new File(directory, "users.txt");
+        UserRegistry writer = new UserRegistry(userFile);
+        UserRegistry compacting = new UserRegistry(userFile);
+        assertTrue(compacting.saveUser("ann", 30, "Female", CREATED));
+
+        AtomicBoolean done = new AtomicBoolean();
+        Thread compactor = new Thread(() -> {
+            while (!done.get()) {
+                compacting.saveUser("ann", 31, "Female", CREATED);
+                compacting.compact();
+            }
+        });
+        compactor.start();
+        for (int i = 0; i < 300; i++) {
+            assertTrue(writer.saveUser("user" + i, 40, "Male", CREATED));
+        }
+        done.set(true);
+        compactor.join();
+        writer.close();
+        compacting.close();
+
+        UserRegistry reopened = new UserRegistry(userFile);
+        assertEquals(301, reopened.size());
+        reopened.close();
+    }
+}
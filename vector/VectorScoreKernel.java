@@ -0,0 +1,89 @@
+/**
+ * VectorScoreKernel.java - BMICalculator.score written with the incubating Vector API
+ * Compiled separately for Java 17+ with --add-modules jdk.incubator.vector
+ * (see the vector profile in pom.xml) and loaded by BatchScorer only when
+ * that module is present at run time. Results match BMICalculator.score
+ * bit for bit; the tail that does not fill a whole vector is scored by it.
+ *
+ * Category codes are computed in double lanes and narrowed to int in a plain
+ * loop afterwards: converting or casting across vector shapes is not compiled
+ * to SIMD code by Java 17 and costs more than the scalar kernel.
+ */
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+class VectorScoreKernel implements BatchScorer.Kernel {
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    // Doubles at or above this magnitude are already whole numbers
+    private static final double WHOLE = 0x1p52;
+
+    // Per-thread category codes as doubles, before narrowing
+    private static final ThreadLocal<double[]> CODES =
+            ThreadLocal.withInitial(() -> new double[BatchScorer.CHUNK_SIZE]);
+
+    @Override
+    public void score(double[] weights, double[] heights, double[] bmis, int[] categories,
+                      int offset, int length) {
+        int end = offset + length;
+        int vectorEnd = offset + SPECIES.loopBound(length);
+        double[] codes = categories != null ? codes(length) : null;
+
+        for (int i = offset; i < vectorEnd; i += SPECIES.length()) {
+            DoubleVector height = DoubleVector.fromArray(SPECIES, heights, i);
+            DoubleVector heightInMeters = height.div(100.0);
+            DoubleVector bmi = DoubleVector.fromArray(SPECIES, weights, i)
+                                           .div(heightInMeters.mul(heightInMeters));
+            VectorMask<Double> unmeasured = height.compare(VectorOperators.GT, 0.0).not();
+
+            if (codes != null) {
+                // Same thresholds as categoryCode(double), counted instead of branched on
+                DoubleVector.broadcast(SPECIES, BMICalculator.OBESE)
+                        .sub(1.0, bmi.compare(VectorOperators.LT, 30.0))
+                        .sub(1.0, bmi.compare(VectorOperators.LT, 25.0))
+                        .sub(1.0, bmi.compare(VectorOperators.LT, 18.5))
+                        .blend(BMICalculator.UNKNOWN, unmeasured)
+                        .intoArray(codes, i - offset);
+            }
+
+            floor(bmi.mul(100.0).add(0.5)).div(100.0)
+                    .blend(0.0, unmeasured)
+                    .intoArray(bmis, i);
+        }
+
+        if (codes != null) {
+            for (int i = offset; i < vectorEnd; i++) {
+                categories[i] = (int) codes[i - offset];
+            }
+        }
+        if (vectorEnd < end) {
+            BMICalculator.score(weights, heights, bmis, categories, vectorEnd, end - vectorEnd);
+        }
+    }
+
+    private static double[] codes(int length) {
+        double[] codes = CODES.get();
+        if (codes.length < length) {
+            codes = new double[length];
+            CODES.set(codes);
+        }
+        return codes;
+    }
+
+    /**
+     * Math.floor for every lane (the incubating API has no floor operator)
+     * Adding and removing 2^52 rounds a lane to a whole number, which is moved
+     * down by one if it rounded up; lanes that are already whole (including
+     * infinities) and NaN pass through unchanged.
+     */
+    private static DoubleVector floor(DoubleVector x) {
+        DoubleVector whole = DoubleVector.broadcast(SPECIES, WHOLE)
+                                         .blend(-WHOLE, x.compare(VectorOperators.LT, 0.0));
+        DoubleVector rounded = x.add(whole).sub(whole);
+        DoubleVector floored = rounded.sub(1.0, rounded.compare(VectorOperators.GT, x));
+        return x.blend(floored, x.abs().compare(VectorOperators.LT, WHOLE));
+    }
+}